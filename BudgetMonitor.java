@@ -0,0 +1,250 @@
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * Spending against a set of budgets, kept current by the repository on
+ * every change instead of being re-totalled. A budget covers one category
+ * or all of them, over the calendar month or the last few days, and keeps
+ * a running total of its window; a change only touches the budgets of its
+ * category and the all-category ones.
+ *
+ * <p>A rolling budget also keeps a ring of its window's day totals. When
+ * the day changes the window slides: each day leaving it is subtracted and
+ * each day entering it is read from the rollups, so expenses dated ahead
+ * are picked up once their day comes. A month budget is read from the
+ * rollups again when the month changes. Not thread-safe.
+ */
+public class BudgetMonitor {
+
+    /** Fractions of a budget at which it is shown as nearly used up, matching the budget bar. */
+    public static final double WARNING = 0.75;
+    public static final double ALERT = 0.90;
+    public static final int MAX_WINDOW_DAYS = 366;
+
+    /** A limit for a category, or all spending if the category is null, over the month or a rolling window. */
+    public static class Budget {
+        public final String category;
+        // 0 for the calendar month
+        public final int windowDays;
+        public final double limit;
+
+        public Budget(String category, int windowDays, double limit) {
+            if (windowDays < 0 || windowDays > MAX_WINDOW_DAYS) {
+                throw new IllegalArgumentException("Window must be 0 to " + MAX_WINDOW_DAYS + " days: " + windowDays);
+            }
+            this.category = category;
+            this.windowDays = windowDays;
+            this.limit = limit;
+        }
+
+        public String label() {
+            String period = windowDays == 0 ? "This month" : "Last " + windowDays + " days";
+            return (category == null ? "All spending" : category) + " · " + period;
+        }
+
+        /** Config line for this budget; the category goes last so it may contain commas. */
+        public String format() {
+            return String.format(Locale.ROOT, "budget,%d,%.2f,%s", windowDays, limit, category == null ? "" : category);
+        }
+
+        /** Budget from a {@link #format} line, or null if the line is not one. */
+        public static Budget parse(String line) {
+            String[] fields = line.split(",", 4);
+            if (fields.length < 4 || !fields[0].equals("budget")) return null;
+            try {
+                return new Budget(fields[3].isEmpty() ? null : fields[3],
+                    Integer.parseInt(fields[1]), Double.parseDouble(fields[2]));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    /** A budget and what has been spent against it. */
+    public static class Status {
+        public final Budget budget;
+        public final double spent;
+
+        Status(Budget budget, double spent) {
+            this.budget = budget;
+            this.spent = spent;
+        }
+
+        public double fraction() {
+            return budget.limit > 0 ? spent / budget.limit : 0;
+        }
+
+        public boolean isOver() {
+            return spent > budget.limit;
+        }
+    }
+
+    /** Running total of one budget over the days {@code first} to {@code last}, as epoch days. */
+    private static class Window {
+        final Budget budget;
+        final int categoryId;
+        // Rolling windows only: cents per day, at epoch day modulo the window length
+        final long[] days;
+        long first = 1;
+        long last = 0;
+        long cents;
+
+        Window(Budget budget, int categoryId) {
+            this.budget = budget;
+            this.categoryId = categoryId;
+            this.days = budget.windowDays > 0 ? new long[budget.windowDays] : null;
+        }
+
+        void add(long day, long amount) {
+            if (day < first || day > last) return;
+            cents += amount;
+            if (days != null) days[slot(day)] += amount;
+        }
+
+        int slot(long day) {
+            return (int) Math.floorMod(day, (long) days.length);
+        }
+    }
+
+    private final ExpenseRollups rollups;
+    private final ZoneId zone = ZoneId.systemDefault();
+    // In the order the budgets were set
+    private final List<Window> windows = new ArrayList<>();
+    private final List<Window> all = new ArrayList<>();
+    // Indexed by category id
+    private final List<List<Window>> byCategory = new ArrayList<>();
+
+    // Epoch day of the last timestamp seen and its bounds; changes mostly fall on the same day
+    private long cachedDayStart = 1;
+    private long cachedDayEnd = 0;
+    private long cachedDay;
+
+    /** Monitor reading days entering a window from {@code rollups}, which must be kept current alongside it. */
+    public BudgetMonitor(ExpenseRollups rollups) {
+        this.rollups = rollups;
+    }
+
+    /** Replaces the budgets, reading each window's total from the rollups once. */
+    public void setBudgets(List<Budget> budgets) {
+        windows.clear();
+        all.clear();
+        byCategory.clear();
+        LocalDate today = LocalDate.now(zone);
+        for (Budget budget : budgets) {
+            int categoryId = budget.category == null ? -1 : CategoryRegistry.shared().idOf(budget.category);
+            Window window = new Window(budget, categoryId);
+            reset(window, today);
+            windows.add(window);
+            if (categoryId < 0) {
+                all.add(window);
+            } else {
+                while (byCategory.size() <= categoryId) byCategory.add(new ArrayList<>());
+                byCategory.get(categoryId).add(window);
+            }
+        }
+    }
+
+    public List<Budget> budgets() {
+        List<Budget> budgets = new ArrayList<>(windows.size());
+        for (Window window : windows) {
+            budgets.add(window.budget);
+        }
+        return budgets;
+    }
+
+    public void add(Expense expense) {
+        add(expense.getTimestamp(), Math.round(expense.getAmount() * 100), expense.getCategoryId());
+    }
+
+    public void remove(Expense expense) {
+        remove(expense.getTimestamp(), Math.round(expense.getAmount() * 100), expense.getCategoryId());
+    }
+
+    public void add(long millis, long cents, int categoryId) {
+        List<Window> matching = categoryId < byCategory.size() ? byCategory.get(categoryId) : Collections.emptyList();
+        if (all.isEmpty() && matching.isEmpty()) return;
+        long day = dayOf(millis);
+        for (Window window : all) {
+            window.add(day, cents);
+        }
+        for (Window window : matching) {
+            window.add(day, cents);
+        }
+    }
+
+    public void remove(long millis, long cents, int categoryId) {
+        add(millis, -cents, categoryId);
+    }
+
+    public void clear() {
+        for (Window window : windows) {
+            window.cents = 0;
+            if (window.days != null) Arrays.fill(window.days, 0);
+        }
+    }
+
+    /** Every budget with its spending as of {@code today}, in the order they were set. */
+    public List<Status> statuses(LocalDate today) {
+        List<Status> statuses = new ArrayList<>(windows.size());
+        for (Window window : windows) {
+            advance(window, today);
+            statuses.add(new Status(window.budget, window.cents / 100.0));
+        }
+        return statuses;
+    }
+
+    /** Moves a window to end on {@code today}, sliding day by day while that's cheaper than starting over. */
+    private void advance(Window window, LocalDate today) {
+        long end = today.toEpochDay();
+        if (window.days == null) {
+            if (end < window.first || end > window.last) reset(window, today);
+            return;
+        }
+        if (end < window.last || end - window.last >= window.days.length) {
+            reset(window, today);
+            return;
+        }
+        for (long day = window.last + 1; day <= end; day++) {
+            int slot = window.slot(day);
+            window.cents -= window.days[slot];
+            window.days[slot] = cents(day, window.categoryId);
+            window.cents += window.days[slot];
+        }
+        window.first = end - window.days.length + 1;
+        window.last = end;
+    }
+
+    private void reset(Window window, LocalDate today) {
+        if (window.days == null) {
+            YearMonth month = YearMonth.from(today);
+            window.first = month.atDay(1).toEpochDay();
+            window.last = month.atEndOfMonth().toEpochDay();
+            window.cents = Math.round(rollups.monthTotal(month, window.categoryId) * 100);
+            return;
+        }
+        window.last = today.toEpochDay();
+        window.first = window.last - window.days.length + 1;
+        window.cents = 0;
+        for (long day = window.first; day <= window.last; day++) {
+            window.days[window.slot(day)] = cents(day, window.categoryId);
+            window.cents += window.days[window.slot(day)];
+        }
+    }
+
+    private long dayOf(long millis) {
+        if (millis < cachedDayStart || millis >= cachedDayEnd) {
+            LocalDate day = LocalDate.ofInstant(Instant.ofEpochMilli(millis), zone);
+            cachedDay = day.toEpochDay();
+            cachedDayStart = day.atStartOfDay(zone).toInstant().toEpochMilli();
+            cachedDayEnd = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        }
+        return cachedDay;
+    }
+
+    private long cents(long day, int categoryId) {
+        return Math.round(rollups.dayTotal(LocalDate.ofEpochDay(day), categoryId) * 100);
+    }
+}
@@ -0,0 +1,116 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of expense categories. Each category gets a small integer id
+ * that expenses, the column store and reports use instead of the label.
+ *
+ * <p>Labels are matched without their leading icon and without case, so
+ * "Food", "food" and "🍔 Food" all resolve to the built-in "🍔 Food". An
+ * unknown label becomes a user-defined category the first time it is seen.
+ * The registry is shared by the whole app and safe to use from the
+ * loader's worker threads.
+ */
+public class CategoryRegistry {
+
+    private static final String[] BUILT_IN = {
+        "🍔 Food", "🚗 Transport", "🎬 Entertainment", "💡 Bills",
+        "🛍️ Shopping", "🏥 Healthcare", "📚 Education", "💼 Work",
+        "✈️ Travel", "🏠 Housing", "📱 Technology", "📦 Other"
+    };
+
+    private static final CategoryRegistry SHARED = new CategoryRegistry();
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] labels = new String[0];
+
+    private CategoryRegistry() {
+        for (String label : BUILT_IN) {
+            idOf(label);
+        }
+    }
+
+    public static CategoryRegistry shared() {
+        return SHARED;
+    }
+
+    /** Id of {@code label}, registering it as a user-defined category if it is new. */
+    public int idOf(String label) {
+        Integer id = ids.get(label);
+        if (id != null) return id;
+
+        String key = key(label);
+        if (key.isEmpty()) return idOf(BUILT_IN[BUILT_IN.length - 1]);
+        id = ids.get(key);
+        if (id != null) {
+            ids.putIfAbsent(label, id);
+            return id;
+        }
+        return register(label.trim(), key);
+    }
+
+    /** Id of {@code label} if it is registered, otherwise -1. */
+    public int find(String label) {
+        Integer id = ids.get(label);
+        if (id == null) id = ids.get(key(label));
+        return id == null ? -1 : id;
+    }
+
+    public String label(int id) {
+        return labels[id];
+    }
+
+    public int size() {
+        return labels.length;
+    }
+
+    /** Every label, built-in categories first, in id order. */
+    public String[] labels() {
+        return labels.clone();
+    }
+
+    /** Labels added by the user or found in the data, in id order. */
+    public List<String> userDefined() {
+        String[] current = labels;
+        return new ArrayList<>(Arrays.asList(current).subList(BUILT_IN.length, current.length));
+    }
+
+    /** Registers the user-defined categories saved by a previous session. */
+    public void load(Path file) throws IOException {
+        if (!Files.exists(file)) return;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (!line.isBlank()) idOf(line);
+        }
+    }
+
+    private synchronized int register(String label, String key) {
+        Integer id = ids.get(key);
+        if (id == null) {
+            String[] grown = Arrays.copyOf(labels, labels.length + 1);
+            id = labels.length;
+            grown[id] = label;
+            labels = grown;
+            ids.put(key, id);
+        }
+        ids.putIfAbsent(label, id);
+        return id;
+    }
+
+    /** Lower-cased label without any leading icon, emoji or spacing. */
+    static String key(String label) {
+        int start = 0;
+        while (start < label.length()) {
+            int c = label.codePointAt(start);
+            if (Character.isLetterOrDigit(c)) break;
+            start += Character.charCount(c);
+        }
+        return label.substring(start).trim().toLowerCase(Locale.ROOT);
+    }
+}
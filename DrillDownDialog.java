@@ -0,0 +1,222 @@
+import java.awt.*;
+import java.awt.event.*;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.TextStyle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.table.DefaultTableModel;
+
+/**
+ * Browses the rollups cube from a year's categories down to one category's
+ * months and then its days. Every level is read straight from the cube's
+ * cells, so drilling in or out never touches the expenses themselves.
+ * Double-click or Enter drills into a row, Backspace or the Back button
+ * goes up a level.
+ */
+public class DrillDownDialog extends JDialog {
+
+    private static final String[] COLUMNS = {"", "Count", "Amount", "% of Total"};
+
+    private final ExpenseRollups rollups;
+    private final DefaultTableModel model = new DefaultTableModel(COLUMNS, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    };
+    private final JTable table = new JTable(model);
+    private final JLabel path = new JLabel();
+    private final JLabel footer = new JLabel(" ");
+    private final JComboBox<Integer> yearCombo = new JComboBox<>();
+    private final JButton backButton = new JButton("◀ Back");
+
+    // Where the view is: a category of -1 shows categories, a month of null shows months
+    private int year;
+    private int categoryId = -1;
+    private YearMonth month;
+    // Category id or month number behind each row
+    private final List<Integer> rowKeys = new ArrayList<>();
+
+    public DrillDownDialog(Frame owner, ExpenseRollups rollups, int year) {
+        super(owner, "Drill Down", true);
+        this.rollups = rollups;
+        this.year = year;
+
+        List<Integer> years = new ArrayList<>();
+        for (YearMonth month : rollups.months()) {
+            if (!years.contains(month.getYear())) years.add(0, month.getYear());
+        }
+        if (!years.contains(year)) years.add(0, year);
+        years.forEach(yearCombo::addItem);
+        yearCombo.setSelectedItem(year);
+        yearCombo.addActionListener(e -> {
+            this.year = (Integer) yearCombo.getSelectedItem();
+            categoryId = -1;
+            month = null;
+            refresh();
+        });
+
+        table.setRowHeight(28);
+        table.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) drillInto(table.rowAtPoint(e.getPoint()));
+            }
+        });
+        table.getInputMap(JComponent.WHEN_ANCESTOR_OF_FOCUSED_COMPONENT)
+            .put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0), "drill");
+        table.getActionMap().put("drill", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                drillInto(table.getSelectedRow());
+            }
+        });
+        table.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_BACK_SPACE, 0), "up");
+        table.getActionMap().put("up", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                goUp();
+            }
+        });
+        backButton.addActionListener(e -> goUp());
+
+        path.setFont(new Font("Segoe UI", Font.BOLD, 15));
+        footer.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        footer.setForeground(new Color(107, 114, 128));
+
+        JPanel top = new JPanel(new BorderLayout(10, 0));
+        top.setBorder(new EmptyBorder(0, 0, 10, 0));
+        top.add(backButton, BorderLayout.WEST);
+        top.add(path, BorderLayout.CENTER);
+        top.add(yearCombo, BorderLayout.EAST);
+
+        JPanel content = new JPanel(new BorderLayout());
+        content.setBorder(new EmptyBorder(15, 15, 15, 15));
+        content.add(top, BorderLayout.NORTH);
+        content.add(new JScrollPane(table), BorderLayout.CENTER);
+        footer.setBorder(new EmptyBorder(10, 0, 0, 0));
+        content.add(footer, BorderLayout.SOUTH);
+        setContentPane(content);
+        setSize(560, 520);
+        setLocationRelativeTo(owner);
+        refresh();
+    }
+
+    private void drillInto(int row) {
+        if (row < 0 || month != null) return;
+        if (categoryId < 0) {
+            categoryId = rowKeys.get(row);
+        } else {
+            month = YearMonth.of(year, rowKeys.get(row));
+        }
+        refresh();
+    }
+
+    private void goUp() {
+        if (month != null) {
+            month = null;
+        } else {
+            categoryId = -1;
+        }
+        refresh();
+    }
+
+    private void refresh() {
+        rowKeys.clear();
+        CategoryRegistry categories = CategoryRegistry.shared();
+        model.setDataVector(new Object[0][], withFirst(categoryId < 0 ? "Category" : month == null ? "Month" : "Day"));
+        if (categoryId < 0) {
+            showCategories(categories);
+        } else if (month == null) {
+            showMonths(categories.label(categoryId));
+        } else {
+            showDays(categories.label(categoryId));
+        }
+        backButton.setEnabled(categoryId >= 0);
+        yearCombo.setEnabled(categoryId < 0);
+        if (model.getRowCount() > 0) table.setRowSelectionInterval(0, 0);
+        table.requestFocusInWindow();
+    }
+
+    private void showCategories(CategoryRegistry categories) {
+        double[] totals = rollups.categoryTotals(YearMonth.of(year, 1), YearMonth.of(year, 12));
+        int[] counts = rollups.categoryCounts(YearMonth.of(year, 1), YearMonth.of(year, 12));
+        double total = sum(totals);
+        Integer[] ids = new Integer[totals.length];
+        for (int id = 0; id < ids.length; id++) {
+            ids[id] = id;
+        }
+        Arrays.sort(ids, (a, b) -> Double.compare(totals[b], totals[a]));
+        for (int id : ids) {
+            if (counts[id] == 0) continue;
+            addRow(id, categories.label(id), counts[id], totals[id], total);
+        }
+        path.setText(year + " › All Categories");
+        footer.setText(String.format("%d categories, $%.2f in %d", rowKeys.size(), total, year));
+    }
+
+    private void showMonths(String category) {
+        double[] totals = rollups.monthTotals(year, categoryId);
+        int[] counts = rollups.monthCounts(year, categoryId);
+        double total = sum(totals);
+        for (int index = 0; index < 12; index++) {
+            if (counts[index] == 0) continue;
+            addRow(index + 1, YearMonth.of(year, index + 1).getMonth()
+                .getDisplayName(TextStyle.FULL, Locale.getDefault()), counts[index], totals[index], total);
+        }
+        path.setText(year + " › " + category);
+        footer.setText(String.format("$%.2f in %d", total, year));
+    }
+
+    private void showDays(String category) {
+        double[] totals = rollups.dayTotals(month, categoryId);
+        int[] counts = rollups.dayCounts(month, categoryId);
+        double total = sum(totals);
+        for (int day = 0; day < totals.length; day++) {
+            if (counts[day] == 0) continue;
+            LocalDate date = month.atDay(day + 1);
+            addRow(day + 1, date + " " + date.getDayOfWeek().getDisplayName(TextStyle.SHORT, Locale.getDefault()),
+                counts[day], totals[day], total);
+        }
+        path.setText(year + " › " + category + " › "
+            + month.getMonth().getDisplayName(TextStyle.FULL, Locale.getDefault()));
+
+        // The cube's weekday dimension, for spotting which days the money goes
+        double[] weekdays = rollups.weekdayTotals(month, categoryId);
+        StringBuilder text = new StringBuilder("By weekday: ");
+        for (int weekday = 0; weekday < weekdays.length; weekday++) {
+            if (weekday > 0) text.append("  ·  ");
+            text.append(DayOfWeek.of(weekday + 1).getDisplayName(TextStyle.SHORT, Locale.getDefault()))
+                .append(String.format(" $%.2f", weekdays[weekday]));
+        }
+        footer.setText(text.toString());
+    }
+
+    private void addRow(int key, String label, int count, double amount, double total) {
+        rowKeys.add(key);
+        model.addRow(new Object[] {label, count, String.format("$%.2f", amount),
+            String.format("%.1f%%", total == 0 ? 0 : amount / total * 100)});
+    }
+
+    private static Object[] withFirst(String name) {
+        Object[] columns = COLUMNS.clone();
+        columns[0] = name;
+        return columns;
+    }
+
+    private static double sum(double[] amounts) {
+        double total = 0;
+        for (double amount : amounts) {
+            total += amount;
+        }
+        return total;
+    }
+}
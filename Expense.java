@@ -1,39 +1,47 @@
 import java.util.Date;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 
 public class Expense {
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     private double amount;
-    private String category;
+    private int categoryId;
     private String description;
-    private Date date;
+    private long timestamp;
 
     public Expense(double amount, String category, String description) {
-        this.amount = amount;
-        this.category = category;
-        this.description = description;
-        this.date = new Date();
+        this(amount, category, description, System.currentTimeMillis());
     }
 
     public Expense(double amount, String category, String description, Date date) {
+        this(amount, category, description, date.getTime());
+    }
+
+    public Expense(double amount, String category, String description, long timestamp) {
         this.amount = amount;
-        this.category = category;
+        this.categoryId = CategoryRegistry.shared().idOf(category);
         this.description = description;
-        this.date = date;
+        this.timestamp = timestamp;
     }
 
     public double getAmount() { return amount; }
-    public String getCategory() { return category; }
+    public String getCategory() { return CategoryRegistry.shared().label(categoryId); }
+    public int getCategoryId() { return categoryId; }
     public String getDescription() { return description; }
-    public Date getDate() { return date; }
+    public Date getDate() { return new Date(timestamp); }
+    public long getTimestamp() { return timestamp; }
+    public LocalDate getLocalDate() { return Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()).toLocalDate(); }
 
     public void setAmount(double amount) { this.amount = amount; }
-    public void setCategory(String category) { this.category = category; }
+    public void setCategory(String category) { this.categoryId = CategoryRegistry.shared().idOf(category); }
     public void setDescription(String description) { this.description = description; }
-    public void setDate(Date date) { this.date = date; }
+    public void setDate(Date date) { this.timestamp = date.getTime(); }
 
     public String getFormattedDate() {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        return sdf.format(date);
+        return DATE_FORMAT.format(Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()));
     }
 
     public String getFormattedAmount() {
@@ -42,20 +50,12 @@ public class Expense {
 
     @Override
     public String toString() {
-        return String.format("%.2f,%s,%s,%d", amount, category, description, date.getTime());
+        StringBuilder row = new StringBuilder(64);
+        ExpenseCodec.append(row, this);
+        return row.toString();
     }
 
     public static Expense fromString(String str) {
-        String[] parts = str.split(",");
-        if (parts.length != 4) return null;
-        try {
-            double amount = Double.parseDouble(parts[0]);
-            String category = parts[1];
-            String description = parts[2];
-            Date date = new Date(Long.parseLong(parts[3]));
-            return new Expense(amount, category, description, date);
-        } catch (Exception e) {
-            return null;
-        }
+        return new ExpenseCodec().parse(str);
     }
 }
@@ -0,0 +1,211 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary columnar snapshot format, an alternative to the CSV file.
+ *
+ * Layout (big-endian): magic, version, generation, row count, category
+ * dictionary, then one column each for epoch millis (long), amount in cents
+ * (long) and category id (int), followed by description offsets (int) and
+ * the UTF-8 description heap.
+ */
+public class ExpenseBinaryFormat {
+
+    public static final String EXTENSION = ".bin";
+
+    private static final int MAGIC = 0x45585042; // "EXPB"
+    private static final short VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 20;
+    // Largest description heap an int offset and a Java array can hold
+    private static final int MAX_HEAP = Integer.MAX_VALUE - 8;
+
+    public static boolean isBinary(Path file) {
+        return file.getFileName().toString().endsWith(EXTENSION);
+    }
+
+    /**
+     * Writes {@code expenses} to {@code file} and forces it to disk. The
+     * rows are read once, into columns, since a store's list view builds an
+     * Expense on every access.
+     */
+    public static void write(List<Expense> expenses, long generation, Path file) throws IOException {
+        int rows = expenses.size();
+        long[] timestamps = new long[rows];
+        long[] cents = new long[rows];
+        int[] categoryColumn = new int[rows];
+        int[] offsets = new int[rows + 1];
+        byte[] heap = new byte[Math.max(1024, rows * 16)];
+        int heapSize = 0;
+        Map<String, Integer> categoryIds = new HashMap<>();
+        List<String> categories = new ArrayList<>();
+
+        int row = 0;
+        for (Expense expense : expenses) {
+            timestamps[row] = expense.getTimestamp();
+            cents[row] = Math.round(expense.getAmount() * 100);
+            Integer categoryId = categoryIds.get(expense.getCategory());
+            if (categoryId == null) {
+                categoryId = categories.size();
+                categoryIds.put(expense.getCategory(), categoryId);
+                categories.add(expense.getCategory());
+            }
+            categoryColumn[row] = categoryId;
+
+            byte[] text = expense.getDescription().getBytes(StandardCharsets.UTF_8);
+            if (text.length > MAX_HEAP - heapSize) {
+                throw new IOException("Descriptions too large for the binary format");
+            }
+            if (heapSize + text.length > heap.length) {
+                heap = Arrays.copyOf(heap, (int) Math.min(MAX_HEAP, Math.max(heap.length * 2L, heapSize + text.length)));
+            }
+            System.arraycopy(text, 0, heap, heapSize, text.length);
+            heapSize += text.length;
+            offsets[++row] = heapSize;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+            buffer.putInt(MAGIC);
+            buffer.putShort(VERSION);
+            buffer.putLong(generation);
+            buffer.putInt(rows);
+            buffer.putInt(categories.size());
+            for (String category : categories) {
+                byte[] bytes = category.getBytes(StandardCharsets.UTF_8);
+                ensure(channel, buffer, 2 + bytes.length);
+                buffer.putShort((short) bytes.length);
+                buffer.put(bytes);
+            }
+
+            for (long timestamp : timestamps) {
+                ensure(channel, buffer, 8);
+                buffer.putLong(timestamp);
+            }
+            for (long amount : cents) {
+                ensure(channel, buffer, 8);
+                buffer.putLong(amount);
+            }
+            for (int categoryId : categoryColumn) {
+                ensure(channel, buffer, 4);
+                buffer.putInt(categoryId);
+            }
+            for (int offset : offsets) {
+                ensure(channel, buffer, 4);
+                buffer.putInt(offset);
+            }
+            for (int i = 0; i < heapSize; i += BUFFER_SIZE) {
+                int length = Math.min(BUFFER_SIZE, heapSize - i);
+                ensure(channel, buffer, length);
+                buffer.put(heap, i, length);
+            }
+
+            drain(channel, buffer);
+            channel.force(true);
+        }
+    }
+
+    /** Reads a binary snapshot; the generation is reported as a {@code #gen,} header. */
+    public static ExpenseLoader.Result read(Path file) throws IOException {
+        long start = System.nanoTime();
+        if (!Files.exists(file)) {
+            return new ExpenseLoader.Result(new ArrayList<>(), null, 0, System.nanoTime() - start);
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Binary snapshot too large: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if (size < 22 || buffer.getInt() != MAGIC) {
+                throw new IOException("Not an expense binary file: " + file);
+            }
+            short version = buffer.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary format version " + version + ": " + file);
+            }
+            long generation = buffer.getLong();
+            int rows = buffer.getInt();
+
+            String[] categories = new String[buffer.getInt()];
+            for (int i = 0; i < categories.length; i++) {
+                byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(bytes);
+                categories[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            long[] timestamps = new long[rows];
+            long[] cents = new long[rows];
+            int[] categoryIds = new int[rows];
+            int[] offsets = new int[rows + 1];
+            buffer.asLongBuffer().get(timestamps);
+            buffer.position(buffer.position() + rows * 8);
+            buffer.asLongBuffer().get(cents);
+            buffer.position(buffer.position() + rows * 8);
+            buffer.asIntBuffer().get(categoryIds);
+            buffer.position(buffer.position() + rows * 4);
+            buffer.asIntBuffer().get(offsets);
+            buffer.position(buffer.position() + (rows + 1) * 4);
+
+            byte[] heap = new byte[offsets[rows]];
+            buffer.get(heap);
+
+            List<Expense> expenses = new ArrayList<>(rows);
+            for (int i = 0; i < rows; i++) {
+                String description = new String(heap, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+                expenses.add(new Expense(cents[i] / 100.0, categories[categoryIds[i]], description, timestamps[i]));
+            }
+            return new ExpenseLoader.Result(expenses, "#gen," + generation, size, System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt binary snapshot: " + file, e);
+        }
+    }
+
+    /**
+     * Converts between the CSV and binary snapshot formats, picking the
+     * direction from the file extensions.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java ExpenseBinaryFormat <from> <to>");
+            System.err.println("  e.g. data/expenses.csv data/expenses.bin, or the reverse");
+            System.exit(1);
+        }
+        Path from = Paths.get(args[0]);
+        Path to = Paths.get(args[1]);
+
+        ExpenseLoader.Result result = ExpenseJournal.readSnapshot(from);
+        ExpenseJournal.writeSnapshot(result.expenses, ExpenseJournal.generationOf(result), to);
+        System.out.printf("Converted %s (%d bytes) to %s (%d bytes)%n",
+            from, Files.size(from), to, Files.size(to));
+    }
+
+    private static void ensure(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain(channel, buffer);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
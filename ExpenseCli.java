@@ -0,0 +1,379 @@
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Command line for scripts and pipelines, on the same data as the tracker
+ * but without opening a window. Nothing here touches AWT or Swing, so it
+ * starts as fast as the data loads. Results go to standard output as
+ * tab-separated UTF-8 lines, with amounts in plain decimal whatever the
+ * locale; messages go to standard error. Exits 0 on success, 1 on an error
+ * and 2 on a usage mistake.
+ *
+ * <pre>
+ * java ExpenseCli add 12.50 Food lunch at the corner [--date 2024-03-01]
+ * java ExpenseCli import expenses.csv.gz      (or - for standard input)
+ * java ExpenseCli summary [--month 2024-03]
+ * java ExpenseCli report categories [--month 2024-03 | --year 2024]
+ * java ExpenseCli report merchants [--by count|spend] [--limit 10]
+ * java ExpenseCli report stats
+ * </pre>
+ *
+ * Don't run it on the data while the tracker has it open; both append to
+ * the same journal. Most of a short run is class loading, which a class
+ * data sharing archive cuts further: run once with
+ * {@code -XX:ArchiveClassesAtExit=cli.jsa} from a jar, then start with
+ * {@code -XX:SharedArchiveFile=cli.jsa -XX:TieredStopAtLevel=1}.
+ */
+public class ExpenseCli {
+
+    private static final int DEFAULT_LIMIT = 10;
+
+    /** A mistake in the arguments; the message is shown above the usage. */
+    private static class UsageException extends Exception {
+        UsageException(String message) {
+            super(message);
+        }
+    }
+
+    // Amounts are written without Formatter, whose locale data costs more to load than a short run
+    private static final PrintStream out = new PrintStream(
+        new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)), false, StandardCharsets.UTF_8);
+    private final ExpenseLedger ledger;
+    private final ExpenseRepository repository;
+    private boolean changed;
+
+    private ExpenseCli(ExpenseLedger ledger) {
+        this.ledger = ledger;
+        this.repository = ledger.repository();
+    }
+
+    public static void main(String[] args) {
+        // Keeps AWT from looking for a display if anything does reach for it
+        System.setProperty("java.awt.headless", "true");
+        if (args.length == 0 || args[0].equals("help") || args[0].equals("--help")) {
+            usage(args.length == 0 ? System.err : System.out);
+            System.exit(args.length == 0 ? 2 : 0);
+        }
+
+        int status = 0;
+        // Failed writes are reported from the persistence and journal threads, until close waits for them
+        AtomicBoolean failed = new AtomicBoolean();
+        ExpenseLedger ledger = new ExpenseLedger(message -> {
+            System.err.println("Error: " + message);
+            failed.set(true);
+        });
+        try {
+            ledger.loadConfig();
+            ledger.load();
+            new ExpenseCli(ledger).run(args);
+        } catch (UsageException e) {
+            System.err.println(e.getMessage());
+            usage(System.err);
+            status = 2;
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            status = 1;
+        } finally {
+            ledger.close();
+        }
+        if (status == 0 && failed.get()) status = 1;
+        out.flush();
+        System.exit(status);
+    }
+
+    private void run(String[] args) throws UsageException, IOException {
+        List<String> rest = new ArrayList<>(Arrays.asList(args).subList(1, args.length));
+        int categories = CategoryRegistry.shared().size();
+        switch (args[0]) {
+            case "add":
+                add(rest);
+                break;
+            case "import":
+                importFrom(rest);
+                break;
+            case "summary":
+                summary(rest);
+                break;
+            case "report":
+                report(rest);
+                break;
+            default:
+                throw new UsageException("Unknown command: " + args[0]);
+        }
+        if (CategoryRegistry.shared().size() != categories) {
+            ledger.saveCategories();
+        }
+        // Fold the journal back into the snapshot once it grows large, as the tracker does
+        if (changed) ledger.compactIfNeeded();
+    }
+
+    // Commands
+
+    private void add(List<String> args) throws UsageException {
+        String date = option(args, "--date");
+        if (args.size() < 2) throw new UsageException("add needs an amount and a category");
+
+        double amount;
+        try {
+            amount = Double.parseDouble(args.get(0));
+        } catch (NumberFormatException e) {
+            throw new UsageException("Not an amount: " + args.get(0));
+        }
+        if (!(amount > 0) || Double.isInfinite(amount)) {
+            throw new UsageException("Amount must be positive");
+        }
+        String category = args.get(1).trim();
+        String description = String.join(" ", args.subList(2, args.size())).trim();
+        if (description.isEmpty()) description = "No description";
+
+        Expense expense;
+        if (date == null) {
+            expense = new Expense(amount, category, description);
+        } else {
+            // The time of day is now, so several added for one day keep their order
+            long timestamp = parseDate(date).atTime(LocalTime.now())
+                .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            expense = new Expense(amount, category, description, timestamp);
+        }
+        repository.add(expense);
+        changed = true;
+        print(expense.getTimestamp(), expense.getCategory(), amount(expense.getAmount()), expense.getDescription());
+    }
+
+    private void importFrom(List<String> args) throws UsageException, IOException {
+        if (args.size() != 1) throw new UsageException("import needs one file, or - for standard input");
+
+        String source = args.get(0);
+        ExpenseImporter.Result result = source.equals("-")
+            ? ExpenseImporter.read(System.in) : ExpenseImporter.read(Paths.get(source));
+        repository.addAll(result.expenses);
+        changed = !result.expenses.isEmpty();
+
+        for (String error : result.errors) {
+            System.err.println(error);
+        }
+        print("imported", result.expenses.size());
+        print("rejected", result.rejected);
+    }
+
+    private void summary(List<String> args) throws UsageException {
+        String monthOption = option(args, "--month");
+        noneLeft(args);
+        LocalDate today = LocalDate.now();
+        YearMonth month = monthOption == null ? YearMonth.from(today) : parseMonth(monthOption);
+        ExpenseRollups rollups = repository.allRollups();
+
+        print("month", month);
+        print("total", amount(rollups.monthTotal(month)));
+        print("count", rollups.monthCount(month));
+        print("today", amount(rollups.dayTotal(today)));
+        print("week", amount(rollups.weekTotal(today)));
+        if (ledger.monthlyBudget() > 0) {
+            print("monthly", amount(rollups.monthTotal(month)), amount(ledger.monthlyBudget()));
+        }
+        for (BudgetMonitor.Status status : ledger.budgetStatuses(today)) {
+            print("budget", status.budget.label(), amount(status.spent), amount(status.budget.limit));
+        }
+        printCategories(rollups.categoryTotals(month), rollups.categoryCounts(month), "category");
+    }
+
+    private void report(List<String> args) throws UsageException {
+        if (args.isEmpty()) throw new UsageException("report needs categories, merchants or stats");
+        String kind = args.remove(0);
+        switch (kind) {
+            case "categories":
+                reportCategories(args);
+                break;
+            case "merchants":
+                reportMerchants(args);
+                break;
+            case "stats":
+                noneLeft(args);
+                reportStats();
+                break;
+            default:
+                throw new UsageException("Unknown report: " + kind);
+        }
+    }
+
+    /** Category, count, total and share of the month's or year's spending, largest first. */
+    private void reportCategories(List<String> args) throws UsageException {
+        String monthOption = option(args, "--month");
+        String yearOption = option(args, "--year");
+        noneLeft(args);
+        if (monthOption != null && yearOption != null) {
+            throw new UsageException("Give --month or --year, not both");
+        }
+
+        YearMonth from;
+        YearMonth to;
+        if (yearOption != null) {
+            int year = parseInt(yearOption, "year");
+            from = YearMonth.of(year, 1);
+            to = YearMonth.of(year, 12);
+        } else {
+            from = monthOption == null ? YearMonth.now() : parseMonth(monthOption);
+            to = from;
+        }
+        ExpenseRollups rollups = repository.allRollups();
+        printCategories(rollups.categoryTotals(from, to), rollups.categoryCounts(from, to), null);
+    }
+
+    /** The most frequent or highest-spend merchants, as estimated by the repository's sketch. */
+    private void reportMerchants(List<String> args) throws UsageException {
+        String by = option(args, "--by");
+        String limitOption = option(args, "--limit");
+        noneLeft(args);
+        int limit = limitOption == null ? DEFAULT_LIMIT : parseInt(limitOption, "limit");
+        if (limit <= 0) throw new UsageException("Limit must be positive");
+
+        MerchantSketch merchants = repository.merchants();
+        List<MerchantSketch.Merchant> top;
+        if (by == null || by.equals("spend")) {
+            top = merchants.topBySpend(limit);
+        } else if (by.equals("count")) {
+            top = merchants.topByCount(limit);
+        } else {
+            throw new UsageException("--by must be count or spend");
+        }
+        for (MerchantSketch.Merchant merchant : top) {
+            print(merchant.label, merchant.count, amount(merchant.spend));
+        }
+    }
+
+    /** Overall totals and distribution, then one line per category. */
+    private void reportStats() {
+        ExpenseRollups rollups = repository.allRollups();
+        ExpenseStatistics statistics = repository.statistics();
+        ExpenseStatistics.Distribution overall = statistics.overall();
+        print("total", amount(rollups.total()));
+        print("count", rollups.count());
+        if (rollups.count() == 0) return;
+
+        print("mean", amount(overall.moments.mean()));
+        print("median", amount(overall.median()));
+        print("p90", amount(overall.percentile(90)));
+        print("p99", amount(overall.percentile(99)));
+        print("stddev", amount(overall.moments.standardDeviation()));
+        Expense largest = repository.findLargest();
+        if (largest != null) {
+            print("largest", amount(largest.getAmount()), largest.getCategory(), largest.getDescription());
+        }
+
+        CategoryRegistry categories = CategoryRegistry.shared();
+        for (int id = 0; id < categories.size(); id++) {
+            ExpenseStatistics.Distribution distribution = statistics.category(id);
+            if (distribution == null) continue;
+            print("category", categories.label(id), distribution.moments.count(), amount(distribution.moments.mean()),
+                amount(distribution.median()), amount(distribution.percentile(90)),
+                amount(distribution.moments.standardDeviation()));
+        }
+    }
+
+    /** One line per category with expenses, largest total first, each starting with {@code key} if given. */
+    private void printCategories(double[] totals, int[] counts, String key) {
+        // A plain insertion sort over a few dozen categories; a stream pipeline costs more to load
+        int[] ids = new int[totals.length];
+        int used = 0;
+        double total = 0;
+        for (int id = 0; id < totals.length; id++) {
+            if (counts[id] == 0) continue;
+            total += totals[id];
+            int i = used++;
+            while (i > 0 && totals[ids[i - 1]] < totals[id]) {
+                ids[i] = ids[i - 1];
+                i--;
+            }
+            ids[i] = id;
+        }
+
+        CategoryRegistry categories = CategoryRegistry.shared();
+        for (int i = 0; i < used; i++) {
+            int id = ids[i];
+            String share = decimal(total > 0 ? totals[id] / total * 100 : 0, 1);
+            if (key == null) {
+                print(categories.label(id), counts[id], amount(totals[id]), share);
+            } else {
+                print(key, categories.label(id), counts[id], amount(totals[id]), share);
+            }
+        }
+    }
+
+    /** Writes one tab-separated line. */
+    private static void print(Object... fields) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) line.append('\t');
+            line.append(fields[i]);
+        }
+        out.println(line);
+    }
+
+    private static String amount(double value) {
+        return decimal(value, 2);
+    }
+
+    private static String decimal(double value, int places) {
+        return BigDecimal.valueOf(value).setScale(places, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    // Arguments
+
+    /** Removes {@code name} and its value from {@code args}, returning the value or null if absent. */
+    private static String option(List<String> args, String name) throws UsageException {
+        int index = args.indexOf(name);
+        if (index < 0) return null;
+        if (index + 1 >= args.size()) throw new UsageException(name + " needs a value");
+        String value = args.get(index + 1);
+        args.subList(index, index + 2).clear();
+        return value;
+    }
+
+    private static void noneLeft(List<String> args) throws UsageException {
+        if (!args.isEmpty()) throw new UsageException("Unexpected argument: " + args.get(0));
+    }
+
+    private static LocalDate parseDate(String text) throws UsageException {
+        try {
+            return LocalDate.parse(text);
+        } catch (DateTimeParseException e) {
+            throw new UsageException("Not a date (yyyy-MM-dd): " + text);
+        }
+    }
+
+    private static YearMonth parseMonth(String text) throws UsageException {
+        try {
+            return YearMonth.parse(text);
+        } catch (DateTimeParseException e) {
+            throw new UsageException("Not a month (yyyy-MM): " + text);
+        }
+    }
+
+    private static int parseInt(String text, String what) throws UsageException {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new UsageException("Not a " + what + ": " + text);
+        }
+    }
+
+    private static void usage(PrintStream stream) {
+        stream.println("Usage: java ExpenseCli <command> [arguments]");
+        stream.println("  add <amount> <category> [description...] [--date yyyy-MM-dd]");
+        stream.println("  import <file|->                  export or storage format, may be gzipped");
+        stream.println("  summary [--month yyyy-MM]");
+        stream.println("  report categories [--month yyyy-MM | --year yyyy]");
+        stream.println("  report merchants [--by count|spend] [--limit n]");
+        stream.println("  report stats");
+    }
+}
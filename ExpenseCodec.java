@@ -0,0 +1,231 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads and writes the native {@code amount,category,description,millis}
+ * row. Commas and backslashes inside text fields are escaped with a
+ * backslash. The parser works directly on a byte range, so a row costs its
+ * description string and one Expense; numbers are parsed in place and
+ * repeated categories come from a small cache.
+ *
+ * <p>Rows written before escaping existed still load: the amount and
+ * category end at the first two commas and the timestamp starts after the
+ * last one, so a description with bare commas in it survives.
+ *
+ * <p>A codec keeps scratch state and is not thread-safe; use one per thread.
+ */
+public class ExpenseCodec {
+
+    private static final int MAX_CACHED_CATEGORIES = 64;
+    private static final int MAX_FAST_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+    private static final long INVALID = Long.MIN_VALUE;
+
+    private byte[][] categoryBytes;
+    private String[] categoryNames;
+    private int categoryCount;
+    private byte[] scratch;
+
+    /** Parses one row without its line terminator; returns null if the row is malformed. */
+    public Expense parse(byte[] buf, int off, int len) {
+        int end = off + len;
+        int first = nextComma(buf, off, end);
+        if (first < 0) return null;
+        int second = nextComma(buf, first + 1, end);
+        if (second < 0) return null;
+        int last = lastComma(buf, second + 1, end);
+        if (last < 0) return null;
+
+        double amount = parseAmount(buf, off, first);
+        long timestamp = parseLong(buf, last + 1, end);
+        if (Double.isNaN(amount) || timestamp == INVALID) return null;
+
+        return new Expense(amount, category(buf, first + 1, second), text(buf, second + 1, last), timestamp);
+    }
+
+    public Expense parse(String row) {
+        byte[] bytes = row.getBytes(StandardCharsets.UTF_8);
+        return parse(bytes, 0, bytes.length);
+    }
+
+    /** Appends the native row for {@code expense}, escaping its text fields. */
+    public static void append(StringBuilder out, Expense expense) {
+        appendAmount(out, expense.getAmount());
+        out.append(',');
+        appendEscaped(out, expense.getCategory());
+        out.append(',');
+        appendEscaped(out, expense.getDescription());
+        out.append(',').append(expense.getTimestamp());
+    }
+
+    /** Same output as {@code %.2f} with a '.' separator, without going through the formatter. */
+    static void appendAmount(StringBuilder out, double amount) {
+        long cents = Math.round(amount * 100);
+        if (cents < 0) {
+            out.append('-');
+            cents = -cents;
+        }
+        out.append(cents / 100).append('.');
+        long fraction = cents % 100;
+        if (fraction < 10) out.append('0');
+        out.append(fraction);
+    }
+
+    private static void appendEscaped(StringBuilder out, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case ',':  out.append("\\,"); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                default:   out.append(c);
+            }
+        }
+    }
+
+    // Field boundaries
+
+    private static int nextComma(byte[] buf, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (buf[i] == '\\') {
+                i++;
+            } else if (buf[i] == ',') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastComma(byte[] buf, int from, int end) {
+        for (int i = end - 1; i >= from; i--) {
+            if (buf[i] == ',') {
+                int backslashes = 0;
+                for (int j = i - 1; j >= from && buf[j] == '\\'; j--) backslashes++;
+                return backslashes % 2 == 0 ? i : -1;
+            }
+        }
+        return -1;
+    }
+
+    // Numbers
+
+    private static double parseAmount(byte[] buf, int from, int to) {
+        int i = from;
+        boolean negative = i < to && buf[i] == '-';
+        if (negative) i++;
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; i < to; i++) {
+            byte b = buf[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (scale >= 0) scale++;
+            } else if (b == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                return parseAmountSlow(buf, from, to);
+            }
+        }
+        if (digits == 0 || digits > MAX_FAST_DIGITS) return parseAmountSlow(buf, from, to);
+
+        // Both operands are exact, so the division rounds the same way Double.parseDouble does
+        double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private static double parseAmountSlow(byte[] buf, int from, int to) {
+        try {
+            return Double.parseDouble(new String(buf, from, to - from, StandardCharsets.ISO_8859_1));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static long parseLong(byte[] buf, int from, int to) {
+        int i = from;
+        boolean negative = i < to && buf[i] == '-';
+        if (negative) i++;
+        if (i == to || to - i > 18) return parseLongSlow(buf, from, to);
+
+        long value = 0;
+        for (; i < to; i++) {
+            byte b = buf[i];
+            if (b < '0' || b > '9') return parseLongSlow(buf, from, to);
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private static long parseLongSlow(byte[] buf, int from, int to) {
+        try {
+            return Long.parseLong(new String(buf, from, to - from, StandardCharsets.ISO_8859_1).trim());
+        } catch (NumberFormatException e) {
+            return INVALID;
+        }
+    }
+
+    // Text
+
+    private String category(byte[] buf, int from, int to) {
+        int length = to - from;
+        if (categoryBytes == null) {
+            categoryBytes = new byte[MAX_CACHED_CATEGORIES][];
+            categoryNames = new String[MAX_CACHED_CATEGORIES];
+        }
+        for (int i = 0; i < categoryCount; i++) {
+            byte[] cached = categoryBytes[i];
+            if (cached.length == length && Arrays.equals(cached, 0, length, buf, from, to)) {
+                return categoryNames[i];
+            }
+        }
+
+        String name = text(buf, from, to);
+        if (categoryCount < MAX_CACHED_CATEGORIES) {
+            categoryBytes[categoryCount] = Arrays.copyOfRange(buf, from, to);
+            categoryNames[categoryCount++] = name;
+        }
+        return name;
+    }
+
+    private String text(byte[] buf, int from, int to) {
+        int escape = -1;
+        for (int i = from; i < to; i++) {
+            if (buf[i] == '\\') {
+                escape = i;
+                break;
+            }
+        }
+        if (escape < 0) return new String(buf, from, to - from, StandardCharsets.UTF_8);
+
+        if (scratch == null || scratch.length < to - from) {
+            scratch = new byte[Math.max(256, to - from)];
+        }
+        int length = escape - from;
+        System.arraycopy(buf, from, scratch, 0, length);
+        for (int i = escape; i < to; i++) {
+            byte b = buf[i];
+            if (b == '\\' && i + 1 < to) {
+                byte next = buf[i + 1];
+                if (next == ',' || next == '\\') {
+                    b = next;
+                    i++;
+                } else if (next == 'n') {
+                    b = '\n';
+                    i++;
+                } else if (next == 'r') {
+                    b = '\r';
+                    i++;
+                }
+                // Anything else is a literal backslash from an unescaped legacy row
+            }
+            scratch[length++] = b;
+        }
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,209 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Bulk importer for both the export format ({@code Date,Category,Description,Amount}
+ * with quoted descriptions) and the native storage format. Lines are read
+ * sequentially and parsed and validated in parallel batches; the caller
+ * inserts the accepted rows in one go.
+ */
+public class ExpenseImporter {
+
+    private static final int BATCH_SIZE = 16384;
+    private static final int MAX_REPORTED_ERRORS = 10;
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /** Accepted rows, oldest first, plus what was rejected and how fast it went. */
+    public static class Result {
+        public final List<Expense> expenses;
+        public final int rejected;
+        public final List<String> errors;
+        public final long nanos;
+
+        Result(List<Expense> expenses, int rejected, List<String> errors, long nanos) {
+            this.expenses = expenses;
+            this.rejected = rejected;
+            this.errors = errors;
+            this.nanos = nanos;
+        }
+
+        public double rowsPerSecond() {
+            return nanos == 0 ? 0 : (expenses.size() + rejected) * 1e9 / nanos;
+        }
+    }
+
+    /** Rows parsed from one batch of lines. */
+    private static class Batch {
+        final List<Expense> expenses = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+        int rejected;
+    }
+
+    /** Reads {@code file}, which may be gzip-compressed, in either supported format. */
+    public static Result read(Path file) throws IOException {
+        return read(Files.newInputStream(file), file.toString());
+    }
+
+    /** Reads rows from {@code in}, such as standard input, like {@link #read(Path)}; closes it. */
+    public static Result read(InputStream in) throws IOException {
+        return read(in, "input");
+    }
+
+    private static Result read(InputStream in, String source) throws IOException {
+        long start = System.nanoTime();
+        List<Future<Batch>> futures = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(open(in), StandardCharsets.UTF_8), 1 << 16)) {
+            String first = reader.readLine();
+            if (first != null && first.startsWith("﻿")) first = first.substring(1);
+            boolean exportFormat = ExportJob.HEADER.equals(first);
+
+            List<String> lines = new ArrayList<>(BATCH_SIZE);
+            int lineNumber = 1;
+            int batchStart = 1;
+            if (!exportFormat && first != null) {
+                lines.add(first);
+            } else {
+                batchStart = 2;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                lines.add(line);
+                if (lines.size() == BATCH_SIZE) {
+                    futures.add(submit(lines, batchStart, exportFormat));
+                    lines = new ArrayList<>(BATCH_SIZE);
+                    batchStart = lineNumber + 1;
+                }
+            }
+            if (!lines.isEmpty()) {
+                futures.add(submit(lines, batchStart, exportFormat));
+            }
+        }
+
+        List<Expense> expenses = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        int rejected = 0;
+        try {
+            for (Future<Batch> future : futures) {
+                Batch batch = future.get();
+                expenses.addAll(batch.expenses);
+                rejected += batch.rejected;
+                for (String error : batch.errors) {
+                    if (errors.size() < MAX_REPORTED_ERRORS) errors.add(error);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error parsing " + source, e.getCause());
+        }
+
+        // Oldest first, so inserting them one after another leaves the newest on top
+        expenses.sort(Comparator.comparingLong(Expense::getTimestamp));
+        return new Result(expenses, rejected, errors, System.nanoTime() - start);
+    }
+
+    private static InputStream open(InputStream raw) throws IOException {
+        InputStream in = new BufferedInputStream(raw, 1 << 16);
+        in.mark(2);
+        int magic = in.read() | (in.read() << 8);
+        in.reset();
+        return magic == GZIPInputStream.GZIP_MAGIC ? new GZIPInputStream(in, 1 << 16) : in;
+    }
+
+    private static Future<Batch> submit(List<String> lines, int firstLine, boolean exportFormat) {
+        return ForkJoinPool.commonPool().submit(() -> parse(lines, firstLine, exportFormat));
+    }
+
+    private static Batch parse(List<String> lines, int firstLine, boolean exportFormat) {
+        Batch batch = new Batch();
+        ExpenseCodec codec = new ExpenseCodec();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            String error;
+            try {
+                Expense expense = exportFormat ? parseExportLine(line) : codec.parse(line);
+                error = expense == null ? "unreadable row" : validate(expense);
+                if (error == null) {
+                    batch.expenses.add(expense);
+                    continue;
+                }
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                error = e.getMessage();
+            }
+            batch.rejected++;
+            if (batch.errors.size() < MAX_REPORTED_ERRORS) {
+                batch.errors.add("Line " + (firstLine + i) + ": " + error);
+            }
+        }
+        return batch;
+    }
+
+    private static Expense parseExportLine(String line) {
+        List<String> fields = splitQuoted(line);
+        if (fields.size() != 4) {
+            throw new IllegalArgumentException("expected 4 fields, found " + fields.size());
+        }
+        long timestamp = LocalDateTime.parse(fields.get(0).trim(), DATE_FORMAT)
+            .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        double amount = Double.parseDouble(fields.get(3).trim());
+        return new Expense(amount, fields.get(1).trim(), fields.get(2), timestamp);
+    }
+
+    private static String validate(Expense expense) {
+        if (!(expense.getAmount() > 0) || Double.isInfinite(expense.getAmount())) {
+            return "amount must be positive";
+        }
+        if (expense.getCategory().isEmpty()) {
+            return "missing category";
+        }
+        return null;
+    }
+
+    /** Splits one CSV line, honouring double-quoted fields with {@code ""} escapes. */
+    static List<String> splitQuoted(String line) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quote");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
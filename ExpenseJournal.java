@@ -0,0 +1,383 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Append-only journal of expense changes layered over a snapshot (a single
+ * CSV or binary file, or a set of month segments). Every add, edit or
+ * delete appends a single line, fsyncs are batched on a background thread,
+ * and compaction folds the journal back into the snapshot without blocking
+ * the caller.
+ */
+public class ExpenseJournal {
+
+    // Record types
+    public static final char ADD = 'A';
+    public static final char EDIT = 'E';
+    public static final char DELETE = 'D';
+    public static final char CLEAR = 'C';
+
+    static final String GENERATION_PREFIX = "#gen,";
+    private static final long SYNC_INTERVAL_MS = 1000;
+    private static final int COMPACTION_THRESHOLD = 500;
+
+    /** Writes the snapshot that makes all records before {@code generation} redundant. */
+    public interface SnapshotWriter {
+        void write(long generation) throws IOException;
+    }
+
+    private final Path journalFile;
+    private final Path rotatedFile;
+    private final ScheduledExecutorService worker;
+
+    private FileChannel channel;
+    private long generation;
+    private int journalRecords;
+    private boolean unsynced;
+    private boolean compacting;
+    // Set once a compaction skipped for a rotated journal has been reported
+    private boolean skipReported;
+
+    public ExpenseJournal(String journalPath) {
+        journalFile = Paths.get(journalPath);
+        rotatedFile = Paths.get(journalPath + ".old");
+        worker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "expense-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        worker.scheduleWithFixedDelay(this::sync, SYNC_INTERVAL_MS, SYNC_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Feeds every record newer than the snapshot to {@code replay}, opens
+     * the journal for appending and returns its generation. Replaying is
+     * idempotent, so records already reflected in a newer snapshot are harmless.
+     */
+    public synchronized long open(long snapshotGeneration, Consumer<String> replay) throws IOException {
+        Files.createDirectories(journalFile.toAbsolutePath().getParent());
+
+        List<String> merged = Files.exists(rotatedFile) ? new ArrayList<>() : null;
+        Consumer<String> sink = merged == null ? replay : record -> {
+            replay.accept(record);
+            merged.add(record);
+        };
+        journalRecords = 0;
+        skipReported = false;
+        replayJournal(rotatedFile, snapshotGeneration, sink);
+        long journalGeneration = replayJournal(journalFile, snapshotGeneration, sink);
+
+        if (merged != null) {
+            // A compaction was interrupted; merge both journals so it can simply run again
+            generation = snapshotGeneration;
+            Path tmp = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                writer.write(GENERATION_PREFIX + generation + "\n");
+                for (String record : merged) {
+                    writer.write(record);
+                    writer.write('\n');
+                }
+            }
+            Files.move(tmp, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(rotatedFile);
+            openJournal(true);
+        } else if (journalGeneration >= 0) {
+            generation = journalGeneration;
+            openJournal(true);
+        } else {
+            generation = snapshotGeneration;
+            openJournal(false);
+        }
+        return generation;
+    }
+
+    /** Renders one journal record, without the trailing newline. */
+    public static String formatRecord(char type, Expense expense) {
+        switch (type) {
+            case ADD:
+            case EDIT:
+                return type + "," + expense.toString();
+            case DELETE:
+                return type + "," + expense.getTimestamp();
+            default:
+                return String.valueOf(type);
+        }
+    }
+
+    /** Returns the timestamp a record refers to, or -1 for clears and torn records. */
+    public static long timestampOf(String record) {
+        if (record.length() < 3) return -1;
+        String payload = record.substring(2);
+        if (record.charAt(0) == DELETE) {
+            try {
+                return Long.parseLong(payload);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        Expense expense = Expense.fromString(payload);
+        return expense == null ? -1 : expense.getTimestamp();
+    }
+
+    /**
+     * Appends {@code count} newline-terminated records with a single write;
+     * the fsync happens later on the journal thread.
+     */
+    public synchronized void append(String records, int count) throws IOException {
+        if (channel == null) throw new IOException("Journal is not open");
+        write(records);
+        journalRecords += count;
+        unsynced = true;
+    }
+
+    /** True once the journal is long enough, unless a failed compaction's rotated journal is waiting for a restart. */
+    public synchronized boolean needsCompaction() {
+        return !compacting && journalRecords >= COMPACTION_THRESHOLD && !Files.exists(rotatedFile);
+    }
+
+    /**
+     * Rotates the journal and runs {@code writer} on the journal thread. The
+     * writer must only use state captured on the caller's thread, so later
+     * changes go to the fresh journal instead. If a compaction is still
+     * running this waits for it rather than dropping the request, since a
+     * caller may rely on its snapshot replacing a CLEAR already journaled.
+     * A failure of the background write is passed to {@code errorHandler}
+     * on the journal thread. Until the next load folds in the journal a
+     * failure leaves behind, compaction is skipped; the first skipped
+     * request throws, later ones return quietly.
+     */
+    public synchronized void compact(SnapshotWriter writer, Consumer<String> errorHandler) throws IOException {
+        while (compacting) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (channel == null) return;
+        // A rotated journal left by a failed compaction is only folded in by the next load
+        if (Files.exists(rotatedFile)) {
+            if (skipReported) return;
+            skipReported = true;
+            throw new IOException("Compaction skipped until restart: " + rotatedFile + " is left from a failed one");
+        }
+
+        channel.force(false);
+        channel.close();
+        Files.move(journalFile, rotatedFile, StandardCopyOption.REPLACE_EXISTING);
+        generation++;
+        openJournal(false);
+        compacting = true;
+
+        long snapshotGeneration = generation;
+        worker.execute(() -> {
+            try {
+                writer.write(snapshotGeneration);
+                Files.deleteIfExists(rotatedFile);
+            } catch (IOException e) {
+                errorHandler.accept("Error compacting journal: " + e.getMessage());
+            } finally {
+                synchronized (this) {
+                    compacting = false;
+                    notifyAll();
+                }
+            }
+        });
+    }
+
+    /** Forces pending records to disk and stops the journal thread. */
+    public void close() {
+        worker.shutdown();
+        try {
+            worker.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (channel == null) return;
+            try {
+                channel.force(false);
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing journal: " + e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    /** Forces appended records to disk now instead of waiting for the next batched sync. */
+    public synchronized void sync() {
+        if (!unsynced || channel == null) return;
+        try {
+            channel.force(false);
+            unsynced = false;
+        } catch (IOException e) {
+            System.err.println("Error syncing journal: " + e.getMessage());
+        }
+    }
+
+    /** Reads a CSV or binary snapshot, depending on the file extension. */
+    public static ExpenseLoader.Result readSnapshot(Path file) throws IOException {
+        return ExpenseBinaryFormat.isBinary(file) ? ExpenseBinaryFormat.read(file) : ExpenseLoader.load(file);
+    }
+
+    public static long generationOf(ExpenseLoader.Result result) {
+        return result.header != null && result.header.startsWith(GENERATION_PREFIX)
+            ? parseGeneration(result.header) : 0;
+    }
+
+    /** Atomically replaces {@code file} with a CSV or binary snapshot of {@code expenses}. */
+    public static void writeSnapshot(List<Expense> expenses, long snapshotGeneration, Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        if (ExpenseBinaryFormat.isBinary(file)) {
+            ExpenseBinaryFormat.write(expenses, snapshotGeneration, tmp);
+        } else {
+            try (FileOutputStream out = new FileOutputStream(tmp.toFile());
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16)) {
+                writer.write(GENERATION_PREFIX + snapshotGeneration + "\n");
+                for (Expense expense : expenses) {
+                    writer.write(expense.toString());
+                    writer.write('\n');
+                }
+                writer.flush();
+                out.getFD().sync();
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Returns the journal's generation, or -1 if it is missing or older than the snapshot. */
+    private long replayJournal(Path file, long snapshotGeneration, Consumer<String> replay) throws IOException {
+        if (!Files.exists(file)) return -1;
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            long journalGeneration = header != null && header.startsWith(GENERATION_PREFIX)
+                ? parseGeneration(header) : -1;
+            if (journalGeneration < snapshotGeneration) return -1;
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                replay.accept(line);
+                journalRecords++;
+            }
+            return journalGeneration;
+        }
+    }
+
+    private void openJournal(boolean append) throws IOException {
+        if (append) {
+            channel = FileChannel.open(journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = channel.size();
+            channel.position(size);
+            // Terminate a record torn by a crash so the next one starts on its own line
+            if (size > 0) {
+                ByteBuffer last = ByteBuffer.allocate(1);
+                channel.read(last, size - 1);
+                if (last.get(0) != '\n') write("\n");
+            }
+        } else {
+            channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+            write(GENERATION_PREFIX + generation + "\n");
+            channel.force(false);
+            journalRecords = 0;
+        }
+    }
+
+    private void write(String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    static long parseGeneration(String line) {
+        try {
+            return Long.parseLong(line.substring(GENERATION_PREFIX.length()).trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /** Rebuilds a newest-first expense list from a snapshot and journal records. */
+    static class Replay {
+        private final Map<Long, Expense> byTimestamp = new HashMap<>();
+        private final List<Expense> base = new ArrayList<>();
+        private final List<Expense> added = new ArrayList<>();
+        private final ExpenseCodec codec = new ExpenseCodec();
+
+        void base(Expense expense) {
+            if (expense == null) return;
+            // Bump duplicate timestamps deterministically so every row has its own key
+            while (byTimestamp.containsKey(expense.getTimestamp())) {
+                expense.setDate(new Date(expense.getTimestamp() + 1));
+            }
+            byTimestamp.put(expense.getTimestamp(), expense);
+            base.add(expense);
+        }
+
+        void apply(String record) {
+            if (record.isEmpty()) return;
+            String payload = record.length() > 2 ? record.substring(2) : "";
+            switch (record.charAt(0)) {
+                case ADD: {
+                    Expense expense = codec.parse(payload);
+                    if (expense != null && !byTimestamp.containsKey(expense.getTimestamp())) {
+                        byTimestamp.put(expense.getTimestamp(), expense);
+                        added.add(expense);
+                    }
+                    break;
+                }
+                case EDIT: {
+                    Expense edited = codec.parse(payload);
+                    Expense expense = edited == null ? null : byTimestamp.get(edited.getTimestamp());
+                    if (expense != null) {
+                        expense.setAmount(edited.getAmount());
+                        expense.setCategory(edited.getCategory());
+                        expense.setDescription(edited.getDescription());
+                    }
+                    break;
+                }
+                case DELETE:
+                    try {
+                        byTimestamp.remove(Long.parseLong(payload));
+                    } catch (NumberFormatException e) {
+                        // Torn record, ignore
+                    }
+                    break;
+                case CLEAR:
+                    byTimestamp.clear();
+                    base.clear();
+                    added.clear();
+                    break;
+                default:
+                    // Unknown or torn record, ignore
+            }
+        }
+
+        List<Expense> result() {
+            List<Expense> result = new ArrayList<>(added.size() + base.size());
+            for (int i = added.size() - 1; i >= 0; i--) {
+                keepIfLive(added.get(i), result);
+            }
+            for (Expense expense : base) {
+                keepIfLive(expense, result);
+            }
+            return result;
+        }
+
+        private void keepIfLive(Expense expense, List<Expense> result) {
+            if (byTimestamp.get(expense.getTimestamp()) == expense) {
+                result.add(expense);
+            }
+        }
+    }
+}
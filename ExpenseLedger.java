@@ -0,0 +1,160 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The expense data without any UI: picks and opens the repository the data
+ * directory calls for, owns the persistence writer, and keeps the budget
+ * config. The Swing tracker and the command line both run on one, so
+ * nothing here may touch AWT or Swing; the command line starts without them.
+ */
+public class ExpenseLedger {
+
+    private static final String DATA_FILE = "data/expenses.csv";
+    private static final String BINARY_DATA_FILE = "data/expenses.bin";
+    private static final String JOURNAL_FILE = "data/expenses.journal";
+    private static final String PARTITION_DIR = "data/months";
+    private static final String CONFIG_FILE = "data/config.txt";
+    private static final String CATEGORIES_FILE = "data/categories.txt";
+    private static final String JDBC_URL_PROPERTY = "expense.jdbc.url";
+
+    private final PersistenceWriter persistence;
+    private final ExpenseRepository repository;
+    private double monthlyBudget = 0;
+    // Category and rolling budgets from the config; the monitor is built once expenses are loaded
+    private final List<BudgetMonitor.Budget> budgets = new ArrayList<>();
+    private BudgetMonitor budgetMonitor;
+    private boolean loaded;
+
+    /**
+     * Opens the ledger in {@code data/}. Failed writes and statements are
+     * passed to {@code errorHandler}, writes from the persistence thread.
+     */
+    public ExpenseLedger(Consumer<String> errorHandler) {
+        ExpenseJournal journal = new ExpenseJournal(JOURNAL_FILE);
+        persistence = new PersistenceWriter(journal, CONFIG_FILE, CATEGORIES_FILE, errorHandler);
+
+        // A database is used when -Dexpense.jdbc.url is set and its driver is on
+        // the classpath. Month segments and the binary snapshot are used once
+        // they have been created with PartitionedExpenseRepository or ExpenseBinaryFormat
+        String jdbcUrl = System.getProperty(JDBC_URL_PROPERTY);
+        ExpenseRepository database = jdbcUrl == null ? null : openDatabase(jdbcUrl, errorHandler);
+        if (database != null) {
+            repository = database;
+        } else if (new File(PARTITION_DIR, PartitionedExpenseRepository.MANIFEST).exists()) {
+            repository = new PartitionedExpenseRepository(PARTITION_DIR, journal, persistence);
+        } else {
+            String snapshot = new File(BINARY_DATA_FILE).exists() ? BINARY_DATA_FILE : DATA_FILE;
+            repository = new SnapshotExpenseRepository(snapshot, journal, persistence);
+        }
+    }
+
+    private static ExpenseRepository openDatabase(String url, Consumer<String> errorHandler) {
+        try {
+            return JdbcExpenseRepository.open(url, errorHandler);
+        } catch (SQLException e) {
+            System.err.println("Error opening " + url + ", using local files: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public ExpenseRepository repository() {
+        return repository;
+    }
+
+    /** Reads the categories and the expenses, then totals any budgets from the config. */
+    public ExpenseLoader.Result load() throws IOException {
+        CategoryRegistry.shared().load(Paths.get(CATEGORIES_FILE));
+        ExpenseLoader.Result result = repository.load();
+        loaded = true;
+        if (!budgets.isEmpty()) {
+            budgetMonitor = repository.budgets();
+            budgetMonitor.setBudgets(budgets);
+        }
+        return result;
+    }
+
+    /** Reads the monthly budget and the budget list; a missing or unreadable config leaves no budgets. */
+    public void loadConfig() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(CONFIG_FILE), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            if (line != null) {
+                monthlyBudget = Double.parseDouble(line);
+                // Category and rolling budgets follow, one per line
+                while ((line = reader.readLine()) != null) {
+                    BudgetMonitor.Budget budget = BudgetMonitor.Budget.parse(line);
+                    if (budget != null) budgets.add(budget);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Config doesn't exist or invalid, use default
+        }
+    }
+
+    public double monthlyBudget() {
+        return monthlyBudget;
+    }
+
+    public void setMonthlyBudget(double budget) {
+        monthlyBudget = budget;
+        saveConfig();
+    }
+
+    public List<BudgetMonitor.Budget> budgets() {
+        return new ArrayList<>(budgets);
+    }
+
+    /** Saves the budgets and has the repository's monitor total them once; changes keep them current after that. */
+    public void setBudgets(List<BudgetMonitor.Budget> budgets) {
+        this.budgets.clear();
+        this.budgets.addAll(budgets);
+        saveConfig();
+        if (!loaded) return;
+        if (budgetMonitor == null) {
+            budgetMonitor = repository.budgets();
+        }
+        budgetMonitor.setBudgets(budgets);
+    }
+
+    /** Spending against each budget as of {@code today}; empty until expenses are loaded. */
+    public List<BudgetMonitor.Status> budgetStatuses(LocalDate today) {
+        return budgetMonitor == null ? Collections.emptyList() : budgetMonitor.statuses(today);
+    }
+
+    /** Queues a write of the user-defined categories, after new ones were registered. */
+    public void saveCategories() {
+        persistence.saveCategories(CategoryRegistry.shared().userDefined());
+    }
+
+    /**
+     * Writes what is queued, then folds the journal into the snapshot if it
+     * has grown large enough. The journal counts records as they are
+     * written, so a run that exits right after its changes must flush first.
+     */
+    public void compactIfNeeded() {
+        persistence.flush();
+        repository.compactIfNeeded();
+    }
+
+    /** Writes everything queued and closes the journal and repository. */
+    public void close() {
+        persistence.close();
+        repository.close();
+    }
+
+    private void saveConfig() {
+        List<String> config = new ArrayList<>();
+        config.add(String.valueOf(monthlyBudget));
+        for (BudgetMonitor.Budget budget : budgets) {
+            config.add(budget.format());
+        }
+        persistence.saveConfig(config);
+    }
+}
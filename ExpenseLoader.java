@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Loads an expense CSV by memory-mapping it, splitting it into line-aligned
+ * chunks and parsing the chunks in parallel on the fork-join pool.
+ */
+public class ExpenseLoader {
+
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    private static final long MAX_CHUNK_SIZE = 1 << 28;
+
+    /** Rows parsed from one file plus the throughput of the load. */
+    public static class Result {
+        public final List<Expense> expenses;
+        public final String header;
+        public final long bytes;
+        public final long nanos;
+
+        Result(List<Expense> expenses, String header, long bytes, long nanos) {
+            this.expenses = expenses;
+            this.header = header;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        public double rowsPerSecond() {
+            return nanos == 0 ? 0 : expenses.size() * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d rows, %d bytes in %.1f ms (%.0f rows/s)",
+                expenses.size(), bytes, nanos / 1e6, rowsPerSecond());
+        }
+    }
+
+    /**
+     * Parses every line of {@code file} in file order. A first line starting
+     * with '#' is returned as the header instead of being parsed.
+     */
+    public static Result load(Path file) throws IOException {
+        long start = System.nanoTime();
+        if (!Files.exists(file)) {
+            return new Result(new ArrayList<>(), null, 0, System.nanoTime() - start);
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<long[]> chunks = split(channel, size);
+
+            List<Callable<List<Expense>>> tasks = new ArrayList<>();
+            for (long[] chunk : chunks) {
+                tasks.add(() -> parseChunk(channel, chunk[0], chunk[1]));
+            }
+
+            List<Expense> expenses = new ArrayList<>();
+            for (Future<List<Expense>> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                expenses.addAll(future.get());
+            }
+
+            return new Result(expenses, readHeader(channel, size), size, System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading " + file, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException("Error parsing " + file, cause);
+        }
+    }
+
+    /** Cuts the file into [start, end) ranges that each end just after a newline. */
+    private static List<long[]> split(FileChannel channel, long size) throws IOException {
+        int parallelism = ForkJoinPool.commonPool().getParallelism();
+        long target = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, size / (parallelism * 4L) + 1));
+
+        List<long[]> chunks = new ArrayList<>();
+        long start = 0;
+        while (start < size) {
+            long end = start + target >= size ? size : nextLineStart(channel, start + target, size);
+            chunks.add(new long[] {start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') return position + i + 1;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static List<Expense> parseChunk(FileChannel channel, long start, long end) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        List<Expense> expenses = new ArrayList<>();
+        ExpenseCodec codec = new ExpenseCodec();
+        byte[] line = new byte[256];
+        int length = 0;
+
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b == '\n') {
+                addLine(expenses, codec, line, length);
+                length = 0;
+            } else {
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, length * 2);
+                }
+                line[length++] = b;
+            }
+        }
+        if (length > 0) {
+            addLine(expenses, codec, line, length);
+        }
+        return expenses;
+    }
+
+    private static void addLine(List<Expense> expenses, ExpenseCodec codec, byte[] line, int length) {
+        if (length > 0 && line[length - 1] == '\r') length--;
+        if (length == 0 || line[0] == '#') return;
+        Expense expense = codec.parse(line, 0, length);
+        if (expense != null) {
+            expenses.add(expense);
+        }
+    }
+
+    private static String readHeader(FileChannel channel, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, 256));
+        channel.read(buffer, 0);
+        buffer.flip();
+        if (!buffer.hasRemaining() || buffer.get(0) != '#') return null;
+
+        StringBuilder header = new StringBuilder();
+        while (buffer.hasRemaining()) {
+            char c = (char) buffer.get();
+            if (c == '\n' || c == '\r') break;
+            header.append(c);
+        }
+        return header.toString();
+    }
+}
@@ -0,0 +1,141 @@
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Where the tracker's expenses live. Implementations are used from the EDT
+ * only; the file-backed ones hand all disk writes to the
+ * {@link PersistenceWriter}.
+ */
+public interface ExpenseRepository {
+
+    /** Reads what the UI needs at startup and reports how much was read. */
+    ExpenseLoader.Result load() throws IOException;
+
+    /** Expenses dated in {@code month}, newest first. The list is a copy. */
+    List<Expense> findByMonth(YearMonth month);
+
+    /** Every expense, newest month first. The list is a copy. */
+    List<Expense> findAll();
+
+    /** Expenses dated from {@code from} up to but not including {@code to}, newest month first. */
+    List<Expense> findBetween(LocalDate from, LocalDate to);
+
+    /** Sum of the amounts dated from {@code from} up to but not including {@code to}. */
+    default double totalBetween(LocalDate from, LocalDate to) {
+        double total = 0;
+        for (Expense expense : findBetween(from, to)) {
+            total += expense.getAmount();
+        }
+        return total;
+    }
+
+    /** Expenses filed under exactly {@code category}, newest month first. */
+    List<Expense> findByCategory(String category);
+
+    /** Expenses whose description or category contains {@code text}, ignoring case. */
+    List<Expense> search(String text);
+
+    /**
+     * The index behind {@link #search}, which unlike the repository may be
+     * queried from any thread, or null if searching has to go through
+     * {@link #search} on the EDT.
+     */
+    default SearchIndex searchIndex() {
+        return null;
+    }
+
+    /**
+     * Every expense in {@link #findAll} order, as rows that may be read once
+     * from another thread, such as an export's. Taking them is cheap; the
+     * rows are built or read as they are iterated. The default copies them
+     * out with {@link #findAll} first.
+     */
+    default Iterable<Expense> snapshotRows() {
+        return findAll();
+    }
+
+    /** Expenses with the given timestamps, in that order; keys no longer stored are skipped. */
+    List<Expense> findByKeys(long[] keys);
+
+    int count();
+
+    /**
+     * Sketch of the merchants with the most expenses and the highest spend,
+     * built from every expense on first use and kept current by every change
+     * made here after that.
+     */
+    MerchantSketch merchants();
+
+    /**
+     * Spending against the budgets set on it, read from the rollups on
+     * first use and kept current by every change made here after that.
+     */
+    BudgetMonitor budgets();
+
+    /** The expense with the largest amount, the newest one on a tie, or null if there are none. */
+    Expense findLargest();
+
+    /**
+     * Running totals, kept current by every change made here. They cover at
+     * least the current and previous month and every month that has been
+     * viewed.
+     */
+    ExpenseRollups rollups();
+
+    /**
+     * The same rollups extended to every stored month, for reports over the
+     * whole history. May read months that haven't been viewed yet.
+     */
+    default ExpenseRollups allRollups() {
+        return rollups();
+    }
+
+    /**
+     * Distribution of every expense's amount, overall and per category,
+     * computed in one parallel pass. Reads the whole history.
+     */
+    default ExpenseStatistics statistics() {
+        List<Expense> expenses = findAll();
+        return ExpenseStatistics.compute(expenses.size(),
+            row -> Math.round(expenses.get(row).getAmount() * 100), row -> expenses.get(row).getCategoryId());
+    }
+
+    /** Stores a new expense, moving its timestamp forward if that key is taken. */
+    void add(Expense expense);
+
+    /**
+     * Stores many new expenses, oldest first, as one batch: the in-memory
+     * structures are updated once and the journal gets a single write.
+     */
+    void addAll(List<Expense> expenses);
+
+    /** Persists changes made to an expense returned by this repository. */
+    void update(Expense expense);
+
+    void delete(Expense expense);
+
+    void clear();
+
+    /**
+     * Clears like {@link #clear} and returns an action that puts every
+     * cleared expense back, for undo. It must run before any other change.
+     * The default copies the expenses out first; a repository that can set
+     * its storage aside as it is does that instead.
+     */
+    default Runnable clearRestorable() {
+        List<Expense> cleared = findAll();
+        clear();
+        cleared.sort(Comparator.comparingLong(Expense::getTimestamp));
+        return () -> addAll(cleared);
+    }
+
+    /** Folds the journal into the snapshot once it has grown large. */
+    void compactIfNeeded();
+
+    /** Releases anything held open; called once on exit. */
+    default void close() {
+    }
+}
@@ -0,0 +1,448 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * Pre-aggregated totals, kept up to date by the repository on every change
+ * so the summary cards and reports read them instead of re-aggregating
+ * rows. It is a cube of month × category × weekday, plus day × category for
+ * drilling down to single days; years, weeks and whole months are summed
+ * from those cells on demand. Each change touches two cells; an edit is a
+ * remove of the old values followed by an add of the new ones. Amounts are
+ * summed in cents.
+ *
+ * <p>The cube can be saved and read back with {@link #write} and
+ * {@link #read}, so a repository that doesn't keep every row in memory can
+ * answer reports for the whole history without reading it.
+ */
+public class ExpenseRollups {
+
+    private static final int DAYS_PER_WEEK = 7;
+    private static final int FORMAT_VERSION = 1;
+
+    /** Totals and row counts of a set of cells, plus their sum. */
+    private static class Cells {
+        long[] cents;
+        int[] counts;
+        long totalCents;
+        int totalCount;
+
+        Cells(int size) {
+            cents = new long[size];
+            counts = new int[size];
+        }
+
+        void add(int cell, long amount, int count) {
+            if (cell >= cents.length) {
+                int capacity = Math.max(cell + 1, cents.length * 2);
+                cents = Arrays.copyOf(cents, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+            }
+            cents[cell] += amount;
+            counts[cell] += count;
+            totalCents += amount;
+            totalCount += count;
+        }
+
+        long cents(int cell) {
+            return cell < cents.length ? cents[cell] : 0;
+        }
+
+        int count(int cell) {
+            return cell < counts.length ? counts[cell] : 0;
+        }
+    }
+
+    // Month cells are indexed category * 7 + weekday (Monday is 0), day cells by category
+    private final TreeMap<Integer, Cells> months = new TreeMap<>();
+    private final Map<Long, Cells> days = new HashMap<>();
+
+    // Day of the last timestamp seen; rows mostly arrive in time order
+    private long cachedDayStart = 1;
+    private long cachedDayEnd = 0;
+    private LocalDate cachedDay;
+
+    public void add(Expense expense) {
+        add(expense.getTimestamp(), Math.round(expense.getAmount() * 100), expense.getCategoryId());
+    }
+
+    public void remove(Expense expense) {
+        remove(expense.getTimestamp(), Math.round(expense.getAmount() * 100), expense.getCategoryId());
+    }
+
+    public void add(long millis, long cents, int categoryId) {
+        add(millis, cents, categoryId, 1);
+    }
+
+    public void remove(long millis, long cents, int categoryId) {
+        add(millis, -cents, categoryId, -1);
+    }
+
+    public void clear() {
+        months.clear();
+        days.clear();
+    }
+
+    /** Drops every total of {@code month}, before its rows are added again. */
+    public void clearMonth(YearMonth month) {
+        months.remove(monthKey(month));
+        for (int day = 1; day <= month.lengthOfMonth(); day++) {
+            days.remove(month.atDay(day).toEpochDay());
+        }
+    }
+
+    /** Replaces every total with those of {@code saved}, a {@link #copy} that is not used after this. */
+    public void restore(ExpenseRollups saved) {
+        months.clear();
+        months.putAll(saved.months);
+        days.clear();
+        days.putAll(saved.days);
+    }
+
+    /** Independent copy, so a background writer can save it while this one changes. */
+    public ExpenseRollups copy() {
+        ExpenseRollups copy = new ExpenseRollups();
+        months.forEach((key, cells) -> copy.months.put(key, copy(cells)));
+        days.forEach((key, cells) -> copy.days.put(key, copy(cells)));
+        return copy;
+    }
+
+    // Queries
+
+    public double dayTotal(LocalDate day) {
+        Cells cells = days.get(day.toEpochDay());
+        return cells == null ? 0 : cells.totalCents / 100.0;
+    }
+
+    /** Total of {@code day} for one category, or all of them if -1. */
+    public double dayTotal(LocalDate day, int categoryId) {
+        Cells cells = days.get(day.toEpochDay());
+        if (cells == null) return 0;
+        return (categoryId < 0 ? cells.totalCents : cells.cents(categoryId)) / 100.0;
+    }
+
+    /** Total of the Monday-to-Sunday week containing {@code day}. */
+    public double weekTotal(LocalDate day) {
+        LocalDate monday = day.with(DayOfWeek.MONDAY);
+        double total = 0;
+        for (int i = 0; i < DAYS_PER_WEEK; i++) {
+            total += dayTotal(monday.plusDays(i));
+        }
+        return total;
+    }
+
+    public double monthTotal(YearMonth month) {
+        Cells cells = months.get(monthKey(month));
+        return cells == null ? 0 : cells.totalCents / 100.0;
+    }
+
+    /** Total of {@code month} for one category, or all of them if -1. */
+    public double monthTotal(YearMonth month, int categoryId) {
+        return monthCell(months.get(monthKey(month)), categoryId, new int[1], 0);
+    }
+
+    public int monthCount(YearMonth month) {
+        Cells cells = months.get(monthKey(month));
+        return cells == null ? 0 : cells.totalCount;
+    }
+
+    /** Total of every month covered. */
+    public double total() {
+        long cents = 0;
+        for (Cells cells : months.values()) {
+            cents += cells.totalCents;
+        }
+        return cents / 100.0;
+    }
+
+    public int count() {
+        int count = 0;
+        for (Cells cells : months.values()) {
+            count += cells.totalCount;
+        }
+        return count;
+    }
+
+    /** Months with at least one expense, oldest first. */
+    public List<YearMonth> months() {
+        List<YearMonth> result = new ArrayList<>(months.size());
+        for (int key : months.keySet()) {
+            result.add(YearMonth.of(Math.floorDiv(key, 12), Math.floorMod(key, 12) + 1));
+        }
+        return result;
+    }
+
+    /** Totals for {@code month} indexed by category id; categories without rows are 0. */
+    public double[] categoryTotals(YearMonth month) {
+        return toAmounts(categoryCents(monthKey(month), monthKey(month)));
+    }
+
+    /** Row counts for {@code month} indexed by category id. */
+    public int[] categoryCounts(YearMonth month) {
+        return categoryCounts(monthKey(month), monthKey(month));
+    }
+
+    /** Totals from {@code from} through {@code to} indexed by category id. */
+    public double[] categoryTotals(YearMonth from, YearMonth to) {
+        return toAmounts(categoryCents(monthKey(from), monthKey(to)));
+    }
+
+    public int[] categoryCounts(YearMonth from, YearMonth to) {
+        return categoryCounts(monthKey(from), monthKey(to));
+    }
+
+    /** Totals per weekday of {@code month}, Monday first, for one category or all of them if -1. */
+    public double[] weekdayTotals(YearMonth month, int categoryId) {
+        double[] totals = new double[DAYS_PER_WEEK];
+        Cells cells = months.get(monthKey(month));
+        if (cells == null) return totals;
+        for (int weekday = 0; weekday < DAYS_PER_WEEK; weekday++) {
+            long cents = 0;
+            for (int id = 0; id < categories(); id++) {
+                if (categoryId < 0 || id == categoryId) cents += cells.cents(id * DAYS_PER_WEEK + weekday);
+            }
+            totals[weekday] = cents / 100.0;
+        }
+        return totals;
+    }
+
+    /** Totals per month of {@code year}, January first, for one category or all of them if -1. */
+    public double[] monthTotals(int year, int categoryId) {
+        double[] totals = new double[12];
+        int[] counts = new int[12];
+        for (int month = 0; month < 12; month++) {
+            totals[month] = monthCell(months.get(year * 12 + month), categoryId, counts, month);
+        }
+        return totals;
+    }
+
+    public int[] monthCounts(int year, int categoryId) {
+        int[] counts = new int[12];
+        for (int month = 0; month < 12; month++) {
+            monthCell(months.get(year * 12 + month), categoryId, counts, month);
+        }
+        return counts;
+    }
+
+    /** Total of every day from {@code from} up to but not including {@code to}, oldest first. */
+    public double[] dailyTotals(LocalDate from, LocalDate to) {
+        long first = from.toEpochDay();
+        double[] totals = new double[(int) Math.max(0, to.toEpochDay() - first)];
+        for (int day = 0; day < totals.length; day++) {
+            Cells cells = days.get(first + day);
+            if (cells != null) totals[day] = cells.totalCents / 100.0;
+        }
+        return totals;
+    }
+
+    /** Totals per day of {@code month}, the 1st first, for one category or all of them if -1. */
+    public double[] dayTotals(YearMonth month, int categoryId) {
+        double[] totals = new double[month.lengthOfMonth()];
+        for (int day = 0; day < totals.length; day++) {
+            Cells cells = days.get(month.atDay(day + 1).toEpochDay());
+            if (cells != null) {
+                totals[day] = (categoryId < 0 ? cells.totalCents : cells.cents(categoryId)) / 100.0;
+            }
+        }
+        return totals;
+    }
+
+    public int[] dayCounts(YearMonth month, int categoryId) {
+        int[] counts = new int[month.lengthOfMonth()];
+        for (int day = 0; day < counts.length; day++) {
+            Cells cells = days.get(month.atDay(day + 1).toEpochDay());
+            if (cells != null) {
+                counts[day] = categoryId < 0 ? cells.totalCount : cells.count(categoryId);
+            }
+        }
+        return counts;
+    }
+
+    // Saving
+
+    /**
+     * Writes the cube to {@code file} with the generation of the data it
+     * describes. Category ids are saved with their labels, since ids are
+     * only stable within one session.
+     */
+    public void write(Path file, long generation) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(generation);
+            String[] labels = CategoryRegistry.shared().labels();
+            out.writeInt(labels.length);
+            for (String label : labels) {
+                out.writeUTF(label);
+            }
+            writeCells(out, months);
+            writeCells(out, days);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Replaces this cube with the one saved in {@code file} and returns its
+     * generation, or -1 if there is no readable cube.
+     */
+    public long read(Path file) {
+        if (!Files.exists(file)) return -1;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) return -1;
+            long generation = in.readLong();
+            int[] ids = new int[in.readInt()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = CategoryRegistry.shared().idOf(in.readUTF());
+            }
+            Map<Integer, Cells> readMonths = new HashMap<>();
+            Map<Long, Cells> readDays = new HashMap<>();
+            int monthCount = in.readInt();
+            for (int i = 0; i < monthCount; i++) {
+                readMonths.put((int) in.readLong(), readCells(in, ids, DAYS_PER_WEEK));
+            }
+            int dayCount = in.readInt();
+            for (int i = 0; i < dayCount; i++) {
+                readDays.put(in.readLong(), readCells(in, ids, 1));
+            }
+            clear();
+            months.putAll(readMonths);
+            days.putAll(readDays);
+            return generation;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error reading " + file + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
+    private static <K extends Number> void writeCells(DataOutputStream out, Map<K, Cells> cells) throws IOException {
+        out.writeInt(cells.size());
+        for (Map.Entry<K, Cells> entry : cells.entrySet()) {
+            out.writeLong(entry.getKey().longValue());
+            Cells value = entry.getValue();
+            int used = 0;
+            for (int count : value.counts) {
+                if (count != 0) used++;
+            }
+            out.writeInt(used);
+            for (int cell = 0; cell < value.counts.length; cell++) {
+                if (value.counts[cell] == 0) continue;
+                out.writeInt(cell);
+                out.writeLong(value.cents[cell]);
+                out.writeInt(value.counts[cell]);
+            }
+        }
+    }
+
+    /** Reads one set of cells, mapping saved category ids through {@code ids}. */
+    private static Cells readCells(DataInputStream in, int[] ids, int perCategory) throws IOException {
+        Cells cells = new Cells(16);
+        int used = in.readInt();
+        for (int i = 0; i < used; i++) {
+            int cell = in.readInt();
+            int id = ids[cell / perCategory];
+            cells.add(id * perCategory + cell % perCategory, in.readLong(), in.readInt());
+        }
+        return cells;
+    }
+
+    // Cells
+
+    private void add(long millis, long cents, int categoryId, int count) {
+        LocalDate day = dayOf(millis);
+        int weekday = day.getDayOfWeek().getValue() - 1;
+        int month = day.getYear() * 12 + day.getMonthValue() - 1;
+        update(months, month, categoryId * DAYS_PER_WEEK + weekday, cents, count);
+        update(days, day.toEpochDay(), categoryId, cents, count);
+    }
+
+    private static <K> void update(Map<K, Cells> map, K key, int cell, long cents, int count) {
+        Cells cells = map.computeIfAbsent(key, k -> new Cells(16));
+        cells.add(cell, cents, count);
+        if (cells.totalCount == 0) {
+            map.remove(key);
+        }
+    }
+
+    private long[] categoryCents(int from, int to) {
+        long[] cents = new long[categories()];
+        if (from > to) return cents;
+        for (Cells cells : months.subMap(from, true, to, true).values()) {
+            for (int id = 0; id < cents.length; id++) {
+                for (int weekday = 0; weekday < DAYS_PER_WEEK; weekday++) {
+                    cents[id] += cells.cents(id * DAYS_PER_WEEK + weekday);
+                }
+            }
+        }
+        return cents;
+    }
+
+    private int[] categoryCounts(int from, int to) {
+        int[] counts = new int[categories()];
+        if (from > to) return counts;
+        for (Cells cells : months.subMap(from, true, to, true).values()) {
+            for (int id = 0; id < counts.length; id++) {
+                for (int weekday = 0; weekday < DAYS_PER_WEEK; weekday++) {
+                    counts[id] += cells.count(id * DAYS_PER_WEEK + weekday);
+                }
+            }
+        }
+        return counts;
+    }
+
+    /** Total of one category, or all if -1, in {@code cells}; also stores its count at {@code counts[index]}. */
+    private double monthCell(Cells cells, int categoryId, int[] counts, int index) {
+        if (cells == null) return 0;
+        if (categoryId < 0) {
+            counts[index] = cells.totalCount;
+            return cells.totalCents / 100.0;
+        }
+        long cents = 0;
+        for (int weekday = 0; weekday < DAYS_PER_WEEK; weekday++) {
+            cents += cells.cents(categoryId * DAYS_PER_WEEK + weekday);
+            counts[index] += cells.count(categoryId * DAYS_PER_WEEK + weekday);
+        }
+        return cents / 100.0;
+    }
+
+    private LocalDate dayOf(long millis) {
+        if (millis < cachedDayStart || millis >= cachedDayEnd) {
+            ZoneId zone = ZoneId.systemDefault();
+            cachedDay = LocalDate.ofInstant(Instant.ofEpochMilli(millis), zone);
+            cachedDayStart = cachedDay.atStartOfDay(zone).toInstant().toEpochMilli();
+            cachedDayEnd = cachedDay.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        }
+        return cachedDay;
+    }
+
+    private static int categories() {
+        return CategoryRegistry.shared().size();
+    }
+
+    private static double[] toAmounts(long[] cents) {
+        double[] amounts = new double[cents.length];
+        for (int i = 0; i < cents.length; i++) {
+            amounts[i] = cents[i] / 100.0;
+        }
+        return amounts;
+    }
+
+    private static Cells copy(Cells cells) {
+        Cells copy = new Cells(0);
+        copy.cents = cells.cents.clone();
+        copy.counts = cells.counts.clone();
+        copy.totalCents = cells.totalCents;
+        copy.totalCount = cells.totalCount;
+        return copy;
+    }
+
+    private static int monthKey(YearMonth month) {
+        return month.getYear() * 12 + month.getMonthValue() - 1;
+    }
+}
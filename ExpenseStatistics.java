@@ -0,0 +1,293 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Distribution of expense amounts, overall and per category, computed in
+ * one parallel pass. The rows are split fork-join style; each leaf feeds
+ * its slice into mergeable accumulators, and the partial results are
+ * merged on the way back up. A {@link Moments} accumulator gives the exact
+ * count, total, mean and standard deviation, and a {@link Digest} gives
+ * quantiles to within a fraction of a percent in bounded memory, so the
+ * median and percentiles come out of the same single pass as the total.
+ */
+public class ExpenseStatistics {
+
+    private static final int LEAF_ROWS = 1 << 14;
+
+    /** Count, exact total and running mean and variance (Welford), mergeable across slices. */
+    public static class Moments {
+        private long count;
+        private long totalCents;
+        private double mean;
+        private double squares;
+
+        void add(long cents) {
+            double amount = cents / 100.0;
+            count++;
+            totalCents += cents;
+            double delta = amount - mean;
+            mean += delta / count;
+            squares += delta * (amount - mean);
+        }
+
+        void merge(Moments other) {
+            if (other.count == 0) return;
+            long merged = count + other.count;
+            double delta = other.mean - mean;
+            mean += delta * other.count / merged;
+            squares += other.squares + delta * delta * count * other.count / merged;
+            count = merged;
+            totalCents += other.totalCents;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public double total() {
+            return totalCents / 100.0;
+        }
+
+        public double mean() {
+            return mean;
+        }
+
+        /** Sample standard deviation; 0 below two expenses. */
+        public double standardDeviation() {
+            return count < 2 ? 0 : Math.sqrt(squares / (count - 1));
+        }
+    }
+
+    /**
+     * Merging t-digest: a sorted list of weighted centroids, small near both
+     * tails and larger in the middle, so extreme percentiles stay accurate.
+     * New values are buffered, sorted and merged in with the centroids in one
+     * walk; merging another digest walks both centroid lists the same way.
+     */
+    public static class Digest {
+        private static final double COMPRESSION = 100;
+
+        private double[] means = new double[0];
+        private double[] weights = new double[0];
+        private int centroids;
+        private final double[] buffer = new double[(int) (20 * COMPRESSION)];
+        private int buffered;
+        private double totalWeight;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        void add(double value) {
+            if (buffered == buffer.length) compress();
+            buffer[buffered++] = value;
+            totalWeight++;
+            if (value < min) min = value;
+            if (value > max) max = value;
+        }
+
+        void merge(Digest other) {
+            compress();
+            other.compress();
+            totalWeight += other.totalWeight;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            merge(other.means, other.weights, other.centroids);
+        }
+
+        /** Value below which a fraction {@code q} of the amounts fall; NaN if empty. */
+        public double quantile(double q) {
+            compress();
+            if (centroids == 0) return Double.NaN;
+            if (centroids == 1) return means[0];
+            double index = q * totalWeight;
+            if (index <= weights[0] / 2) {
+                return min + (means[0] - min) * index / (weights[0] / 2);
+            }
+            double center = weights[0] / 2;
+            for (int i = 0; i < centroids - 1; i++) {
+                double next = center + (weights[i] + weights[i + 1]) / 2;
+                if (index <= next) {
+                    return means[i] + (means[i + 1] - means[i]) * (index - center) / (next - center);
+                }
+                center = next;
+            }
+            double tail = weights[centroids - 1] / 2;
+            return means[centroids - 1] + (max - means[centroids - 1]) * Math.min(1, (index - center) / tail);
+        }
+
+        public double min() {
+            return min;
+        }
+
+        public double max() {
+            return max;
+        }
+
+        private void compress() {
+            if (buffered == 0) return;
+            Arrays.sort(buffer, 0, buffered);
+            int count = buffered;
+            buffered = 0;
+            merge(buffer, null, count);
+        }
+
+        /**
+         * Merges sorted centroids (weight 1 each if {@code otherWeights} is
+         * null) into this digest's, combining neighbours while the scale
+         * function allows. {@link #totalWeight} must already include them.
+         */
+        private void merge(double[] otherMeans, double[] otherWeights, int otherCount) {
+            double[] mergedMeans = new double[centroids + otherCount];
+            double[] mergedWeights = new double[mergedMeans.length];
+            int count = -1;
+            double weightSoFar = 0;
+            double limit = 0;
+            for (int i = 0, j = 0; i < centroids || j < otherCount; ) {
+                double mean;
+                double weight;
+                if (j == otherCount || i < centroids && means[i] <= otherMeans[j]) {
+                    mean = means[i];
+                    weight = weights[i++];
+                } else {
+                    mean = otherMeans[j];
+                    weight = otherWeights == null ? 1 : otherWeights[j];
+                    j++;
+                }
+                if (count >= 0 && weightSoFar + mergedWeights[count] + weight <= limit) {
+                    mergedWeights[count] += weight;
+                    mergedMeans[count] += (mean - mergedMeans[count]) * weight / mergedWeights[count];
+                } else {
+                    if (count >= 0) weightSoFar += mergedWeights[count];
+                    limit = totalWeight * limit(weightSoFar / totalWeight);
+                    count++;
+                    mergedMeans[count] = mean;
+                    mergedWeights[count] = weight;
+                }
+            }
+            centroids = count + 1;
+            means = mergedMeans;
+            weights = mergedWeights;
+        }
+
+        /** Largest quantile a centroid starting at quantile {@code q} may reach: one step of k = δ/2π·asin(2q−1). */
+        private static double limit(double q) {
+            double k = COMPRESSION / (2 * Math.PI) * Math.asin(2 * Math.min(1, q) - 1);
+            return (Math.sin(Math.min(Math.PI / 2, (k + 1) * 2 * Math.PI / COMPRESSION)) + 1) / 2;
+        }
+    }
+
+    /** Moments and quantiles of one group of expenses. */
+    public static class Distribution {
+        public final Moments moments = new Moments();
+        public final Digest digest = new Digest();
+
+        void add(long cents) {
+            moments.add(cents);
+            digest.add(cents / 100.0);
+        }
+
+        void merge(Distribution other) {
+            moments.merge(other.moments);
+            digest.merge(other.digest);
+        }
+
+        public double median() {
+            return digest.quantile(0.5);
+        }
+
+        public double percentile(double percent) {
+            return digest.quantile(percent / 100);
+        }
+    }
+
+    private final Distribution overall = new Distribution();
+    private Distribution[] byCategory;
+
+    private ExpenseStatistics(int categories) {
+        byCategory = new Distribution[categories];
+    }
+
+    /**
+     * Statistics of {@code size} rows read through the given accessors,
+     * which are called from the common fork-join pool while the caller
+     * waits, so they must not change until this returns.
+     */
+    public static ExpenseStatistics compute(int size, IntToLongFunction cents, IntUnaryOperator categoryIds) {
+        int categories = CategoryRegistry.shared().size();
+        ExpenseStatistics statistics = ForkJoinPool.commonPool().invoke(new Slice(0, size, cents, categoryIds, categories));
+        // Rows only go into their category; the overall digest is merged from those once
+        for (Distribution category : statistics.byCategory) {
+            if (category != null) statistics.overall.merge(category);
+        }
+        return statistics;
+    }
+
+    public Distribution overall() {
+        return overall;
+    }
+
+    /** Distribution of one category, or null if it has no expenses. */
+    public Distribution category(int categoryId) {
+        return categoryId < byCategory.length ? byCategory[categoryId] : null;
+    }
+
+    private void add(long cents, int categoryId) {
+        if (categoryId >= byCategory.length) {
+            byCategory = Arrays.copyOf(byCategory, categoryId + 1);
+        }
+        if (byCategory[categoryId] == null) {
+            byCategory[categoryId] = new Distribution();
+        }
+        byCategory[categoryId].add(cents);
+    }
+
+    private ExpenseStatistics merge(ExpenseStatistics other) {
+        if (other.byCategory.length > byCategory.length) {
+            byCategory = Arrays.copyOf(byCategory, other.byCategory.length);
+        }
+        for (int id = 0; id < other.byCategory.length; id++) {
+            if (other.byCategory[id] == null) continue;
+            if (byCategory[id] == null) {
+                byCategory[id] = other.byCategory[id];
+            } else {
+                byCategory[id].merge(other.byCategory[id]);
+            }
+        }
+        return this;
+    }
+
+    /** Rows {@code from} up to {@code to}, split in halves until a slice is small enough to scan. */
+    private static class Slice extends RecursiveTask<ExpenseStatistics> {
+        private final int from;
+        private final int to;
+        private final IntToLongFunction cents;
+        private final IntUnaryOperator categoryIds;
+        private final int categories;
+
+        Slice(int from, int to, IntToLongFunction cents, IntUnaryOperator categoryIds, int categories) {
+            this.from = from;
+            this.to = to;
+            this.cents = cents;
+            this.categoryIds = categoryIds;
+            this.categories = categories;
+        }
+
+        @Override
+        protected ExpenseStatistics compute() {
+            if (to - from <= LEAF_ROWS) {
+                ExpenseStatistics statistics = new ExpenseStatistics(categories);
+                for (int row = from; row < to; row++) {
+                    statistics.add(cents.applyAsLong(row), categoryIds.applyAsInt(row));
+                }
+                return statistics;
+            }
+            int middle = (from + to) >>> 1;
+            Slice left = new Slice(from, middle, cents, categoryIds, categories);
+            left.fork();
+            ExpenseStatistics right = new Slice(middle, to, cents, categoryIds, categories).compute();
+            return left.join().merge(right);
+        }
+    }
+}
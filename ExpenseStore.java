@@ -0,0 +1,254 @@
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Column store for expenses: parallel primitive arrays for the timestamp,
+ * the amount in cents and the {@link CategoryRegistry} id, with descriptions kept as UTF-8
+ * in one shared byte heap. A row costs about 28 bytes plus its text
+ * instead of an Expense, two Strings and their headers, and scans read
+ * contiguous arrays.
+ *
+ * <p>Rows are kept sorted by timestamp, so a calendar range is one
+ * contiguous slice found by binary search; see {@link #lowerBound(long)}.
+ * {@link Expense} objects are only built on request, so callers hold
+ * copies; write changes back with {@link #set(int, Expense)}. Not
+ * thread-safe.
+ */
+public class ExpenseStore {
+
+    private static final int MIN_COMPACT_BYTES = 1 << 20;
+
+    private long[] millis = new long[16];
+    private long[] cents = new long[16];
+    private int[] categoryIds = new int[16];
+    private int[] textOffsets = new int[16];
+    private int[] textLengths = new int[16];
+    private int size;
+
+    private byte[] heap = new byte[1024];
+    private int heapSize;
+    private int garbageBytes;
+
+    public int size() {
+        return size;
+    }
+
+    // Row access
+
+    public long millis(int row) {
+        return millis[row];
+    }
+
+    public long cents(int row) {
+        return cents[row];
+    }
+
+    public double amount(int row) {
+        return cents[row] / 100.0;
+    }
+
+    public int categoryId(int row) {
+        return categoryIds[row];
+    }
+
+    public String category(int row) {
+        return CategoryRegistry.shared().label(categoryIds[row]);
+    }
+
+    public String description(int row) {
+        return new String(heap, textOffsets[row], textLengths[row], StandardCharsets.UTF_8);
+    }
+
+    public Expense toExpense(int row) {
+        return new Expense(amount(row), category(row), description(row), millis[row]);
+    }
+
+    /** Row with {@code timestamp}, or -1. */
+    public int indexOf(long timestamp) {
+        int row = lowerBound(timestamp);
+        return row < size && millis[row] == timestamp ? row : -1;
+    }
+
+    /** First row at or after {@code timestamp}; {@link #size()} if there is none. */
+    public int lowerBound(long timestamp) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (millis[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Read-only view of every row, newest first; elements are built on access. */
+    public List<Expense> asList() {
+        return new AbstractList<Expense>() {
+            @Override
+            public Expense get(int index) {
+                return toExpense(size - 1 - index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /** Independent copy, so a background writer can read it while this store changes. */
+    public ExpenseStore copy() {
+        ExpenseStore copy = new ExpenseStore();
+        copy.millis = Arrays.copyOf(millis, size);
+        copy.cents = Arrays.copyOf(cents, size);
+        copy.categoryIds = Arrays.copyOf(categoryIds, size);
+        copy.textOffsets = Arrays.copyOf(textOffsets, size);
+        copy.textLengths = Arrays.copyOf(textLengths, size);
+        copy.size = size;
+        copy.heap = Arrays.copyOf(heap, heapSize);
+        copy.heapSize = heapSize;
+        copy.garbageBytes = garbageBytes;
+        return copy;
+    }
+
+    // Mutation
+
+    /** Adds a row in timestamp order; adding at or after the newest row is O(1). */
+    public void add(Expense expense) {
+        int row = size == 0 || expense.getTimestamp() >= millis[size - 1]
+            ? size : lowerBound(expense.getTimestamp());
+        ensureCapacity(size + 1);
+        int tail = size - row;
+        System.arraycopy(millis, row, millis, row + 1, tail);
+        System.arraycopy(cents, row, cents, row + 1, tail);
+        System.arraycopy(categoryIds, row, categoryIds, row + 1, tail);
+        System.arraycopy(textOffsets, row, textOffsets, row + 1, tail);
+        System.arraycopy(textLengths, row, textLengths, row + 1, tail);
+        millis[row] = expense.getTimestamp();
+        textLengths[row] = 0;
+        size++;
+        set(row, expense);
+    }
+
+    /** Adds many rows, sorting once at the end instead of shifting for each row. */
+    public void addAll(Collection<Expense> expenses) {
+        ensureCapacity(size + expenses.size());
+        boolean sorted = true;
+        for (Expense expense : expenses) {
+            sorted &= size == 0 || expense.getTimestamp() >= millis[size - 1];
+            millis[size] = expense.getTimestamp();
+            textLengths[size] = 0;
+            size++;
+            set(size - 1, expense);
+        }
+        if (!sorted) {
+            sortByTime();
+        }
+    }
+
+    /** Overwrites the amount, category and description of {@code row}. */
+    public void set(int row, Expense expense) {
+        cents[row] = Math.round(expense.getAmount() * 100);
+        categoryIds[row] = expense.getCategoryId();
+
+        byte[] text = expense.getDescription().getBytes(StandardCharsets.UTF_8);
+        garbageBytes += textLengths[row];
+        if (heapSize + text.length > heap.length) {
+            heap = Arrays.copyOf(heap, Math.max(heap.length * 2, heapSize + text.length));
+        }
+        System.arraycopy(text, 0, heap, heapSize, text.length);
+        textOffsets[row] = heapSize;
+        textLengths[row] = text.length;
+        heapSize += text.length;
+        compactHeapIfNeeded();
+    }
+
+    public void remove(int row) {
+        garbageBytes += textLengths[row];
+        int tail = size - row - 1;
+        System.arraycopy(millis, row + 1, millis, row, tail);
+        System.arraycopy(cents, row + 1, cents, row, tail);
+        System.arraycopy(categoryIds, row + 1, categoryIds, row, tail);
+        System.arraycopy(textOffsets, row + 1, textOffsets, row, tail);
+        System.arraycopy(textLengths, row + 1, textLengths, row, tail);
+        size--;
+        compactHeapIfNeeded();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= millis.length) return;
+        capacity = Math.max(capacity, Math.max(16, millis.length * 2));
+        millis = Arrays.copyOf(millis, capacity);
+        cents = Arrays.copyOf(cents, capacity);
+        categoryIds = Arrays.copyOf(categoryIds, capacity);
+        textOffsets = Arrays.copyOf(textOffsets, capacity);
+        textLengths = Arrays.copyOf(textLengths, capacity);
+    }
+
+    private void sortByTime() {
+        Integer[] order = new Integer[size];
+        for (int row = 0; row < size; row++) {
+            order[row] = row;
+        }
+        Arrays.sort(order, Comparator.comparingLong(row -> millis[row]));
+
+        long[] sortedMillis = new long[millis.length];
+        long[] sortedCents = new long[millis.length];
+        int[] sortedCategories = new int[millis.length];
+        int[] sortedOffsets = new int[millis.length];
+        int[] sortedLengths = new int[millis.length];
+        for (int row = 0; row < size; row++) {
+            int from = order[row];
+            sortedMillis[row] = millis[from];
+            sortedCents[row] = cents[from];
+            sortedCategories[row] = categoryIds[from];
+            sortedOffsets[row] = textOffsets[from];
+            sortedLengths[row] = textLengths[from];
+        }
+        millis = sortedMillis;
+        cents = sortedCents;
+        categoryIds = sortedCategories;
+        textOffsets = sortedOffsets;
+        textLengths = sortedLengths;
+    }
+
+    /** Releases spare capacity, for example after a bulk load. */
+    public void trimToSize() {
+        int capacity = Math.max(16, size);
+        millis = Arrays.copyOf(millis, capacity);
+        cents = Arrays.copyOf(cents, capacity);
+        categoryIds = Arrays.copyOf(categoryIds, capacity);
+        textOffsets = Arrays.copyOf(textOffsets, capacity);
+        textLengths = Arrays.copyOf(textLengths, capacity);
+        heap = Arrays.copyOf(heap, Math.max(1024, heapSize));
+    }
+
+    public void clear() {
+        size = 0;
+        heapSize = 0;
+        garbageBytes = 0;
+    }
+
+    /** Drops text left behind by edits and deletes once it is half the heap. */
+    private void compactHeapIfNeeded() {
+        if (garbageBytes < MIN_COMPACT_BYTES || garbageBytes * 2 < heapSize) return;
+
+        int live = 0;
+        for (int row = 0; row < size; row++) {
+            live += textLengths[row];
+        }
+        byte[] compacted = new byte[Math.max(1024, live)];
+        int position = 0;
+        for (int row = 0; row < size; row++) {
+            System.arraycopy(heap, textOffsets[row], compacted, position, textLengths[row]);
+            textOffsets[row] = position;
+            position += textLengths[row];
+        }
+        heap = compacted;
+        heapSize = position;
+        garbageBytes = 0;
+    }
+}
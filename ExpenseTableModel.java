@@ -0,0 +1,243 @@
+import java.util.*;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Table model that reads the shown expenses by row index instead of copying
+ * them into cell vectors. Cells are formatted in {@link #getValueAt}, so
+ * only the rows the table actually paints are ever formatted, and showing a
+ * new list is a single table event however long it is.
+ *
+ * <p>Sorting never looks at formatted cells. Each column has a primitive
+ * key: the timestamp, the amount in cents, the category label's rank or
+ * the description's rank in a dictionary that outlives filter changes. The
+ * ascending order of a column is computed once per list with a stable radix
+ * sort and cached, and descending order reads it backwards, so switching
+ * columns or direction only rebuilds what the new list actually needs.
+ * Row indexes taken by the methods here are view rows.
+ */
+public class ExpenseTableModel extends AbstractTableModel {
+
+    public static final int DATE = 0;
+    public static final int CATEGORY = 1;
+    public static final int DESCRIPTION = 2;
+    public static final int AMOUNT = 3;
+
+    private static final String[] COLUMNS = {"Date", "Category", "Description", "Amount"};
+
+    private List<Expense> expenses = new ArrayList<>();
+    private int sortColumn = -1;
+    private boolean ascending;
+    // Ascending permutation of the list per column, built on first use
+    private final int[][] orders = new int[COLUMNS.length][];
+
+    // Descriptions in sorted order, and each one's position, shared by every list shown
+    private Map<String, Integer> descriptionRanks = new HashMap<>();
+
+    /** Shows {@code expenses}, in the current sort order, firing one data-changed event. */
+    public void setExpenses(List<Expense> expenses) {
+        this.expenses = expenses;
+        Arrays.fill(orders, null);
+        fireTableDataChanged();
+    }
+
+    /**
+     * Sorts by {@code column}, ascending on the first click and flipping
+     * direction on the next ones.
+     */
+    public void toggleSort(int column) {
+        ascending = column != sortColumn || !ascending;
+        sortColumn = column;
+        fireTableDataChanged();
+    }
+
+    public Expense getExpense(int row) {
+        return expenses.get(listIndex(row));
+    }
+
+    /** Shows a new expense, at the top unless a sort puts it elsewhere. */
+    public void addExpense(Expense expense) {
+        expenses.add(0, expense);
+        Arrays.fill(orders, null);
+        if (sortColumn < 0) {
+            fireTableRowsInserted(0, 0);
+        } else {
+            fireTableDataChanged();
+        }
+    }
+
+    public void removeExpense(int row) {
+        expenses.remove(listIndex(row));
+        Arrays.fill(orders, null);
+        if (sortColumn < 0) {
+            fireTableRowsDeleted(row, row);
+        } else {
+            fireTableDataChanged();
+        }
+    }
+
+    /** Call after changing the expense shown at {@code row}; it may move if the list is sorted. */
+    public void expenseUpdated(int row) {
+        Arrays.fill(orders, null);
+        if (sortColumn < 0) {
+            fireTableRowsUpdated(row, row);
+        } else {
+            fireTableDataChanged();
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return expenses.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        if (column != sortColumn) return COLUMNS[column];
+        return COLUMNS[column] + (ascending ? " ▲" : " ▼");
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Expense expense = getExpense(row);
+        switch (column) {
+            case DATE: return expense.getFormattedDate();
+            case CATEGORY: return expense.getCategory();
+            case DESCRIPTION: return expense.getDescription();
+            default: return expense.getFormattedAmount();
+        }
+    }
+
+    // Sorting
+
+    private int listIndex(int row) {
+        if (sortColumn < 0) return row;
+        int[] order = order(sortColumn);
+        return ascending ? order[row] : order[order.length - 1 - row];
+    }
+
+    private int[] order(int column) {
+        if (orders[column] == null) {
+            orders[column] = sortedIndexes(keys(column));
+        }
+        return orders[column];
+    }
+
+    private long[] keys(int column) {
+        int size = expenses.size();
+        long[] keys = new long[size];
+        switch (column) {
+            case DATE:
+                for (int i = 0; i < size; i++) keys[i] = expenses.get(i).getTimestamp();
+                break;
+            case AMOUNT:
+                for (int i = 0; i < size; i++) keys[i] = Math.round(expenses.get(i).getAmount() * 100);
+                break;
+            case CATEGORY:
+                int[] ranks = categoryRanks();
+                for (int i = 0; i < size; i++) keys[i] = ranks[expenses.get(i).getCategoryId()];
+                break;
+            default:
+                if (!descriptionKeys(keys)) {
+                    updateDescriptionRanks();
+                    descriptionKeys(keys);
+                }
+                break;
+        }
+        return keys;
+    }
+
+    /** Fills in the description ranks; false if some description isn't ranked yet. */
+    private boolean descriptionKeys(long[] keys) {
+        for (int i = 0; i < keys.length; i++) {
+            Integer rank = descriptionRanks.get(expenses.get(i).getDescription());
+            if (rank == null) return false;
+            keys[i] = rank;
+        }
+        return true;
+    }
+
+    /** Position of each category id when the labels are sorted, ignoring icons and case. */
+    private static int[] categoryRanks() {
+        String[] labels = CategoryRegistry.shared().labels();
+        Integer[] ids = new Integer[labels.length];
+        for (int id = 0; id < ids.length; id++) {
+            ids[id] = id;
+        }
+        Arrays.sort(ids, Comparator.comparing(id -> CategoryRegistry.key(labels[id])));
+        int[] ranks = new int[labels.length];
+        for (int rank = 0; rank < ids.length; rank++) {
+            ranks[ids[rank]] = rank;
+        }
+        return ranks;
+    }
+
+    /**
+     * Adds the descriptions of the current list to the rank dictionary and
+     * re-sorts it. The old entries are dropped instead once the dictionary
+     * has grown much larger than the list.
+     */
+    private void updateDescriptionRanks() {
+        Set<String> words = new HashSet<>();
+        for (Expense expense : expenses) {
+            words.add(expense.getDescription());
+        }
+        if (descriptionRanks.size() < 4 * Math.max(1024, expenses.size())) {
+            words.addAll(descriptionRanks.keySet());
+        }
+        String[] sorted = words.toArray(new String[0]);
+        Arrays.sort(sorted, String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder()));
+        Map<String, Integer> ranks = new HashMap<>(sorted.length * 2);
+        for (int rank = 0; rank < sorted.length; rank++) {
+            ranks.put(sorted[rank], rank);
+        }
+        descriptionRanks = ranks;
+    }
+
+    /**
+     * Indexes of {@code keys} in ascending key order, equal keys keeping
+     * their list order. LSD radix sort a byte at a time, skipping bytes
+     * every key shares.
+     */
+    static int[] sortedIndexes(long[] keys) {
+        int size = keys.length;
+        int[] order = new int[size];
+        int[] buffer = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (long key : keys) {
+            min = Math.min(min, key);
+            max = Math.max(max, key);
+        }
+        if (size < 2 || min == max) return order;
+
+        // Offset so every key is a non-negative distance from the smallest
+        int[] counts = new int[257];
+        long range = max - min;
+        for (int shift = 0; shift < 64 && (range >>> shift) != 0; shift += 8) {
+            Arrays.fill(counts, 0);
+            for (long key : keys) {
+                counts[(int) (((key - min) >>> shift) & 0xFF) + 1]++;
+            }
+            if (counts[(int) (((keys[0] - min) >>> shift) & 0xFF) + 1] == size) continue;
+            for (int b = 0; b < 256; b++) {
+                counts[b + 1] += counts[b];
+            }
+            for (int i = 0; i < size; i++) {
+                int index = order[i];
+                buffer[counts[(int) (((keys[index] - min) >>> shift) & 0xFF)]++] = index;
+            }
+            int[] swap = order;
+            order = buffer;
+            buffer = swap;
+        }
+        return order;
+    }
+}
@@ -2,15 +2,17 @@ import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
 import java.text.SimpleDateFormat;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
-import java.time.ZoneId;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
+import java.time.format.TextStyle;
 import java.util.*;
 import java.util.List;
+import java.util.stream.IntStream;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.table.DefaultTableCellRenderer;
-import javax.swing.table.DefaultTableModel;
 
 /**
  * Enhanced ExpenseTracker - Premium design with advanced features
@@ -18,29 +20,39 @@ import javax.swing.table.DefaultTableModel;
 public class ExpenseTracker extends JFrame {
 
     // UI Components
-    private DefaultTableModel tableModel;
+    private ExpenseTableModel tableModel;
     private JTable expenseTable;
     private JTextField amountField, descriptionField, searchField;
-    private JComboBox<String> categoryCombo, filterCombo;
-    private JLabel totalLabel, budgetStatusLabel, monthLabel, weekLabel, todayLabel;
+    private JComboBox<String> categoryCombo;
+    private JButton filterButton;
+    private JPopupMenu filterMenu;
+    // Indexed by category id
+    private final List<JCheckBoxMenuItem> categoryFilters = new ArrayList<>();
+    private JLabel totalLabel, budgetStatusLabel, monthLabel, weekLabel, todayLabel, historyLabel;
     private JProgressBar budgetBar;
+    private JPanel budgetRows;
     private JPanel statsPanel;
     private JButton prevMonthBtn, nextMonthBtn;
+    private JButton undoBtn, redoBtn;
     private LocalDate currentMonth;
 
     // Data
-    private List<Expense> expenses;
-    private List<Expense> filteredExpenses;
-    private double monthlyBudget = 0;
+    private ExpenseRepository repository;
+    // Changes made from the UI go through here so they can be undone
+    private UndoHistory history;
+    private SearchPipeline searchPipeline;
+    // Repository, persistence and budgets, shared with the command line
+    private final ExpenseLedger ledger;
 
     // Constants
-    private static final String DATA_FILE = "data/expenses.csv";
-    private static final String CONFIG_FILE = "data/config.txt";
-    private static final String[] CATEGORIES = {
-        "Food", "Transport", "Entertainment", "Bills",
-        "Shopping", "Healthcare", "Education", "Work",
-        "Travel", "Housing", "Technology", "Other"
-    };
+    private static final int COMPACTION_CHECK_MS = 30000;
+    private static final String ALL_CATEGORIES = "All Categories";
+    private static final int SEARCH_DEBOUNCE_MS = 150;
+    private static final int MERCHANT_REPORT_SIZE = 10;
+    private static final String[] BUDGET_PERIODS = {"This month", "Last 7 days", "Last 30 days", "Last 90 days"};
+    private static final int[] BUDGET_PERIOD_DAYS = {0, 7, 30, 90};
+    private static final int STATS_CARD_HEIGHT = 210;
+    private static final int BUDGET_ROW_HEIGHT = 24;
     
     // Modern Color Palette - Enhanced
     private static final Color BG_PRIMARY = new Color(248, 249, 250);
@@ -56,8 +68,13 @@ public class ExpenseTracker extends JFrame {
     private static final Color HOVER_BG = new Color(241, 245, 249);
 
     public ExpenseTracker() {
-        expenses = new ArrayList<>();
-        filteredExpenses = new ArrayList<>();
+        searchPipeline = new SearchPipeline(SEARCH_DEBOUNCE_MS, this::showSearchResults);
+        // The ledger reports errors from the persistence thread
+        ledger = new ExpenseLedger(message -> SwingUtilities.invokeLater(() -> showError(message)));
+        repository = ledger.repository();
+        Runtime.getRuntime().addShutdownHook(new Thread(ledger::close, "expense-flush"));
+
+        history = new UndoHistory(repository);
         currentMonth = LocalDate.now();
         setTitle("Expense Tracker Pro");
         setSize(1400, 820);
@@ -256,8 +273,8 @@ public class ExpenseTracker extends JFrame {
     private JPanel createStatsCard() {
         JPanel card = createCard();
         card.setLayout(new BoxLayout(card, BoxLayout.Y_AXIS));
-        card.setPreferredSize(new Dimension(380, 210));
-        card.setMaximumSize(new Dimension(380, 210));
+        card.setPreferredSize(new Dimension(380, STATS_CARD_HEIGHT));
+        card.setMaximumSize(new Dimension(380, STATS_CARD_HEIGHT));
 
         // Header
         JLabel header = new JLabel("Budget Overview");
@@ -283,15 +300,15 @@ public class ExpenseTracker extends JFrame {
         budgetTitle.setForeground(TEXT_SECONDARY);
         budgetHeader.add(budgetTitle, BorderLayout.WEST);
         
-        JButton setBudgetBtn = new JButton("Set Budget");
-        setBudgetBtn.setFont(new Font("Segoe UI", Font.BOLD, 11));
-        setBudgetBtn.setForeground(Color.WHITE);
-        setBudgetBtn.setBackground(ACCENT_BLUE);
-        setBudgetBtn.setBorderPainted(false);
-        setBudgetBtn.setFocusPainted(false);
-        setBudgetBtn.setCursor(new Cursor(Cursor.HAND_CURSOR));
+        JPanel budgetButtons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 6, 0));
+        budgetButtons.setBackground(BG_SECONDARY);
+        JButton manageBudgetsBtn = createBudgetButton("Budgets");
+        manageBudgetsBtn.addActionListener(e -> manageBudgets());
+        budgetButtons.add(manageBudgetsBtn);
+        JButton setBudgetBtn = createBudgetButton("Set Budget");
         setBudgetBtn.addActionListener(e -> setBudget());
-        budgetHeader.add(setBudgetBtn, BorderLayout.EAST);
+        budgetButtons.add(setBudgetBtn);
+        budgetHeader.add(budgetButtons, BorderLayout.EAST);
         
         budgetPanel.add(budgetHeader);
         budgetPanel.add(Box.createVerticalStrut(10));
@@ -314,6 +331,13 @@ public class ExpenseTracker extends JFrame {
         budgetPanel.add(budgetStatusLabel);
 
         card.add(budgetPanel);
+
+        // One row per category or rolling budget, filled by updateSummary
+        budgetRows = new JPanel();
+        budgetRows.setLayout(new BoxLayout(budgetRows, BoxLayout.Y_AXIS));
+        budgetRows.setBackground(BG_SECONDARY);
+        budgetRows.setAlignmentX(Component.LEFT_ALIGNMENT);
+        card.add(budgetRows);
         
         statsPanel = card;
         return card;
@@ -343,7 +367,9 @@ public class ExpenseTracker extends JFrame {
         // Category Input
         card.add(createLabel("Category"));
         card.add(Box.createVerticalStrut(6));
-        categoryCombo = new JComboBox<>(CATEGORIES);
+        categoryCombo = new JComboBox<>(CategoryRegistry.shared().labels());
+        categoryCombo.setEditable(true);
+        categoryCombo.setToolTipText("Pick a category or type a new one");
         categoryCombo.setFont(new Font("Segoe UI", Font.PLAIN, 14));
         categoryCombo.setBackground(Color.WHITE);
         categoryCombo.setMaximumSize(new Dimension(400, 42));
@@ -374,7 +400,7 @@ public class ExpenseTracker extends JFrame {
     private JPanel createQuickActionsCard() {
         JPanel card = createCard();
         card.setLayout(new BoxLayout(card, BoxLayout.Y_AXIS));
-        card.setMaximumSize(new Dimension(380, 170));
+        card.setMaximumSize(new Dimension(380, 310));
 
         JLabel header = new JLabel("Quick Actions");
         header.setFont(new Font("Segoe UI", Font.BOLD, 16));
@@ -393,9 +419,24 @@ public class ExpenseTracker extends JFrame {
         card.add(exportBtn);
         card.add(Box.createVerticalStrut(8));
 
+        JButton importBtn = createSecondaryButton("📥 Import Data");
+        importBtn.addActionListener(e -> importFromCSV());
+        card.add(importBtn);
+        card.add(Box.createVerticalStrut(8));
+
         JButton categoryBtn = createSecondaryButton("📈 Category Report");
         categoryBtn.addActionListener(e -> showCategoryReport());
         card.add(categoryBtn);
+        card.add(Box.createVerticalStrut(8));
+
+        JButton merchantBtn = createSecondaryButton("🏪 Top Merchants");
+        merchantBtn.addActionListener(e -> showMerchantReport());
+        card.add(merchantBtn);
+        card.add(Box.createVerticalStrut(8));
+
+        JButton chartBtn = createSecondaryButton("📉 Spending Chart");
+        chartBtn.addActionListener(e -> showSpendingChart());
+        card.add(chartBtn);
 
         return card;
     }
@@ -408,25 +449,42 @@ public class ExpenseTracker extends JFrame {
         JPanel headerPanel = new JPanel(new BorderLayout(15, 0));
         headerPanel.setBackground(BG_SECONDARY);
 
-        JLabel header = new JLabel("Expense History");
-        header.setFont(new Font("Segoe UI", Font.BOLD, 18));
-        header.setForeground(TEXT_PRIMARY);
-        headerPanel.add(header, BorderLayout.WEST);
+        historyLabel = new JLabel("Expense History");
+        historyLabel.setFont(new Font("Segoe UI", Font.BOLD, 18));
+        historyLabel.setForeground(TEXT_PRIMARY);
+        headerPanel.add(historyLabel, BorderLayout.WEST);
 
         JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 0));
         searchPanel.setBackground(BG_SECONDARY);
         
         // Filter dropdown
-        String[] filters = {"All Categories", "🍔 Food", "🚗 Transport", "🎬 Entertainment", 
-                           "💡 Bills", "🛍️ Shopping", "🏥 Healthcare", "📚 Education", 
-                           "💼 Work", "✈️ Travel", "🏠 Housing", "📱 Technology", "📦 Other"};
-        filterCombo = new JComboBox<>(filters);
-        filterCombo.setFont(new Font("Segoe UI", Font.PLAIN, 12));
-        filterCombo.setPreferredSize(new Dimension(150, 35));
-        filterCombo.setCursor(new Cursor(Cursor.HAND_CURSOR));
-        filterCombo.addActionListener(e -> filterExpenses());
+        // Category filter; several categories can be ticked at once
+        filterMenu = new JPopupMenu();
+        JMenuItem allItem = new JMenuItem(ALL_CATEGORIES);
+        allItem.addActionListener(e -> {
+            categoryFilters.forEach(item -> item.setSelected(false));
+            categoryFilterChanged();
+        });
+        filterMenu.add(allItem);
+        filterMenu.addSeparator();
+        for (String label : CategoryRegistry.shared().labels()) {
+            addCategoryFilter(label);
+        }
+        filterButton = new JButton(ALL_CATEGORIES + " ▾");
+        filterButton.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        filterButton.setPreferredSize(new Dimension(170, 35));
+        filterButton.setFocusPainted(false);
+        filterButton.setCursor(new Cursor(Cursor.HAND_CURSOR));
+        filterButton.addActionListener(e -> filterMenu.show(filterButton, 0, filterButton.getHeight()));
         
-        searchField = new JTextField(18);
+        // Search metrics on hover, read as the tooltip shows so they include the latest search
+        searchField = new JTextField(18) {
+            @Override
+            public String getToolTipText() {
+                return searchPipeline.metrics();
+            }
+        };
+        ToolTipManager.sharedInstance().registerComponent(searchField);
         searchField.setFont(new Font("Segoe UI", Font.PLAIN, 13));
         searchField.setBorder(BorderFactory.createCompoundBorder(
             BorderFactory.createLineBorder(BORDER_COLOR, 1),
@@ -442,7 +500,7 @@ public class ExpenseTracker extends JFrame {
         searchIcon.setFont(new Font("Segoe UI", Font.PLAIN, 14));
         searchIcon.setBorder(new EmptyBorder(0, 0, 0, 8));
         
-        searchPanel.add(filterCombo);
+        searchPanel.add(filterButton);
         searchPanel.add(searchIcon);
         searchPanel.add(searchField);
         headerPanel.add(searchPanel, BorderLayout.EAST);
@@ -450,13 +508,7 @@ public class ExpenseTracker extends JFrame {
         card.add(headerPanel, BorderLayout.NORTH);
 
         // Table
-        String[] columns = {"Date", "Category", "Description", "Amount"};
-        tableModel = new DefaultTableModel(columns, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        tableModel = new ExpenseTableModel();
         
         expenseTable = new JTable(tableModel);
         expenseTable.setFont(new Font("Segoe UI", Font.PLAIN, 13));
@@ -487,6 +539,20 @@ public class ExpenseTracker extends JFrame {
         expenseTable.getColumnModel().getColumn(3).setPreferredWidth(130);
         expenseTable.getColumnModel().getColumn(3).setCellRenderer(rightRenderer);
 
+        // Click a header to sort by that column; again to reverse
+        expenseTable.getTableHeader().addMouseListener(new MouseAdapter() {
+            public void mouseClicked(MouseEvent e) {
+                int column = expenseTable.columnAtPoint(e.getPoint());
+                if (column < 0) return;
+                tableModel.toggleSort(expenseTable.convertColumnIndexToModel(column));
+                for (int i = 0; i < tableModel.getColumnCount(); i++) {
+                    expenseTable.getColumnModel().getColumn(expenseTable.convertColumnIndexToView(i))
+                        .setHeaderValue(tableModel.getColumnName(i));
+                }
+                expenseTable.getTableHeader().repaint();
+            }
+        });
+
         // Double-click to edit
         expenseTable.addMouseListener(new MouseAdapter() {
             public void mouseClicked(MouseEvent e) {
@@ -517,6 +583,34 @@ public class ExpenseTracker extends JFrame {
         clearBtn.addActionListener(e -> clearAllExpenses());
         actionPanel.add(clearBtn);
 
+        undoBtn = createActionButton("↶ Undo", TEXT_SECONDARY);
+        undoBtn.addActionListener(e -> undo());
+        actionPanel.add(undoBtn, 0);
+
+        redoBtn = createActionButton("↷ Redo", TEXT_SECONDARY);
+        redoBtn.addActionListener(e -> redo());
+        actionPanel.add(redoBtn, 1);
+        updateUndoButtons();
+
+        // Anywhere in the window, including the input fields
+        int menuKey = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+        InputMap keys = getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
+        keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, menuKey), "undo");
+        keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, menuKey), "redo");
+        keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, menuKey | InputEvent.SHIFT_DOWN_MASK), "redo");
+        getRootPane().getActionMap().put("undo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                undo();
+            }
+        });
+        getRootPane().getActionMap().put("redo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                redo();
+            }
+        });
+
         card.add(actionPanel, BorderLayout.SOUTH);
 
         return card;
@@ -602,6 +696,17 @@ public class ExpenseTracker extends JFrame {
         return button;
     }
 
+    private JButton createBudgetButton(String text) {
+        JButton button = new JButton(text);
+        button.setFont(new Font("Segoe UI", Font.BOLD, 11));
+        button.setForeground(Color.WHITE);
+        button.setBackground(ACCENT_BLUE);
+        button.setBorderPainted(false);
+        button.setFocusPainted(false);
+        button.setCursor(new Cursor(Cursor.HAND_CURSOR));
+        return button;
+    }
+
     private JButton createSecondaryButton(String text) {
         JButton button = new JButton(text);
         button.setFont(new Font("Segoe UI", Font.BOLD, 13));
@@ -670,23 +775,26 @@ public class ExpenseTracker extends JFrame {
                 return;
             }
 
-            String category = (String) categoryCombo.getSelectedItem();
+            Object selected = categoryCombo.getSelectedItem();
+            String category = selected == null ? "" : selected.toString().trim();
             String description = descriptionField.getText().trim();
             if (description.isEmpty() || description.equals("What did you buy?")) {
                 description = "No description";
             }
 
             Expense expense = new Expense(amount, category, description);
-            expenses.add(0, expense);
+            history.add(expense);
+            updateUndoButtons();
+            refreshCategories();
             
-            if (isInCurrentMonth(expense)) {
-                filteredExpenses.add(0, expense);
-                addExpenseToTable(expense, 0);
+            if (isFiltered()) {
+                filterExpenses();
+            } else if (isInCurrentMonth(expense)) {
+                tableModel.addExpense(expense);
             }
             
             updateSummary();
             clearInputFields();
-            saveExpenses();
 
             // Success animation
             amountField.setBackground(new Color(240, 253, 244));
@@ -700,38 +808,16 @@ public class ExpenseTracker extends JFrame {
     }
 
     private boolean isInCurrentMonth(Expense expense) {
-        LocalDate expenseDate = expense.getDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        LocalDate expenseDate = expense.getLocalDate();
         return expenseDate.getYear() == currentMonth.getYear() && 
                expenseDate.getMonth() == currentMonth.getMonth();
     }
 
     private void filterByMonth() {
-        filteredExpenses.clear();
-        tableModel.setRowCount(0);
-        
-        for (Expense expense : expenses) {
-            if (isInCurrentMonth(expense)) {
-                filteredExpenses.add(expense);
-            }
-        }
-        
-        for (int i = 0; i < filteredExpenses.size(); i++) {
-            addExpenseToTable(filteredExpenses.get(i), i);
-        }
-        
+        filterExpenses();
         updateSummary();
     }
 
-    private void addExpenseToTable(Expense expense, int position) {
-        Object[] row = {
-            expense.getFormattedDate(),
-            expense.getCategory(),
-            expense.getDescription(),
-            expense.getFormattedAmount()
-        };
-        tableModel.insertRow(position, row);
-    }
-
     private void deleteExpense() {
         int selectedRow = expenseTable.getSelectedRow();
         if (selectedRow >= 0) {
@@ -742,12 +828,11 @@ public class ExpenseTracker extends JFrame {
                 JOptionPane.PLAIN_MESSAGE);
                 
             if (confirm == JOptionPane.YES_OPTION) {
-                Expense toRemove = filteredExpenses.get(selectedRow);
-                expenses.remove(toRemove);
-                filteredExpenses.remove(selectedRow);
-                tableModel.removeRow(selectedRow);
+                Expense toRemove = tableModel.getExpense(selectedRow);
+                history.delete(toRemove);
+                tableModel.removeExpense(selectedRow);
+                updateUndoButtons();
                 updateSummary();
-                saveExpenses();
             }
         } else {
             showError("Please select an expense to delete");
@@ -757,7 +842,7 @@ public class ExpenseTracker extends JFrame {
     private void editExpense() {
         int selectedRow = expenseTable.getSelectedRow();
         if (selectedRow >= 0) {
-            Expense expense = filteredExpenses.get(selectedRow);
+            Expense expense = tableModel.getExpense(selectedRow);
             
             JPanel editPanel = new JPanel(new GridLayout(3, 2, 10, 15));
             editPanel.setBorder(new EmptyBorder(15, 15, 15, 15));
@@ -765,7 +850,7 @@ public class ExpenseTracker extends JFrame {
             JTextField editAmount = new JTextField(String.valueOf(expense.getAmount()));
             editAmount.setFont(new Font("Segoe UI", Font.PLAIN, 14));
             
-            JComboBox<String> editCategory = new JComboBox<>(CATEGORIES);
+            JComboBox<String> editCategory = new JComboBox<>(CategoryRegistry.shared().labels());
             editCategory.setFont(new Font("Segoe UI", Font.PLAIN, 14));
             editCategory.setSelectedItem(expense.getCategory());
             
@@ -798,16 +883,11 @@ public class ExpenseTracker extends JFrame {
                         return;
                     }
                     
-                    expense.setAmount(newAmount);
-                    expense.setCategory((String) editCategory.getSelectedItem());
-                    expense.setDescription(editDescription.getText().trim());
-                    
-                    tableModel.setValueAt(expense.getCategory(), selectedRow, 1);
-                    tableModel.setValueAt(expense.getDescription(), selectedRow, 2);
-                    tableModel.setValueAt(expense.getFormattedAmount(), selectedRow, 3);
-                    
+                    history.edit(expense, newAmount, (String) editCategory.getSelectedItem(),
+                        editDescription.getText().trim());
+                    tableModel.expenseUpdated(selectedRow);
+                    updateUndoButtons();
                     updateSummary();
-                    saveExpenses();
                 } catch (NumberFormatException ex) {
                     showError("Please enter a valid amount");
                 }
@@ -818,23 +898,49 @@ public class ExpenseTracker extends JFrame {
     }
 
     private void clearAllExpenses() {
-        if (expenses.isEmpty()) return;
+        if (repository.count() == 0) return;
         
         int confirm = JOptionPane.showConfirmDialog(this,
-            "Delete all " + expenses.size() + " expenses?\nThis cannot be undone.",
+            "Delete all " + repository.count() + " expenses?\nYou can bring them back with Undo.",
             "Confirm Clear All",
             JOptionPane.YES_NO_OPTION,
             JOptionPane.WARNING_MESSAGE);
 
         if (confirm == JOptionPane.YES_OPTION) {
-            expenses.clear();
-            filteredExpenses.clear();
-            tableModel.setRowCount(0);
+            history.clearAll();
+            tableModel.setExpenses(new ArrayList<>());
+            updateUndoButtons();
             updateSummary();
-            saveExpenses();
         }
     }
 
+    private void undo() {
+        if (!history.canUndo()) return;
+        history.undo();
+        historyChanged();
+    }
+
+    private void redo() {
+        if (!history.canRedo()) return;
+        history.redo();
+        historyChanged();
+    }
+
+    /** Shows the ledger after an undo or redo; the rows on screen may be the ones it replaced. */
+    private void historyChanged() {
+        refreshCategories();
+        filterExpenses();
+        updateUndoButtons();
+        updateSummary();
+    }
+
+    private void updateUndoButtons() {
+        undoBtn.setEnabled(history.canUndo());
+        undoBtn.setToolTipText(history.canUndo() ? "Undo " + history.undoName() : null);
+        redoBtn.setEnabled(history.canRedo());
+        redoBtn.setToolTipText(history.canRedo() ? "Redo " + history.redoName() : null);
+    }
+
     private void setBudget() {
         JPanel budgetPanel = new JPanel(new BorderLayout(10, 10));
         budgetPanel.setBorder(new EmptyBorder(15, 15, 15, 15));
@@ -842,6 +948,7 @@ public class ExpenseTracker extends JFrame {
         JLabel label = new JLabel("Enter monthly budget:");
         label.setFont(new Font("Segoe UI", Font.BOLD, 13));
         
+        double monthlyBudget = ledger.monthlyBudget();
         JTextField budgetField = new JTextField(monthlyBudget > 0 ? String.valueOf(monthlyBudget) : "");
         budgetField.setFont(new Font("Segoe UI", Font.PLAIN, 14));
         
@@ -853,13 +960,12 @@ public class ExpenseTracker extends JFrame {
             
         if (result == JOptionPane.OK_OPTION && !budgetField.getText().trim().isEmpty()) {
             try {
-                monthlyBudget = Double.parseDouble(budgetField.getText().trim());
-                if (monthlyBudget < 0) {
+                double budget = Double.parseDouble(budgetField.getText().trim());
+                if (budget < 0) {
                     showError("Budget cannot be negative");
-                    monthlyBudget = 0;
                 } else {
+                    ledger.setMonthlyBudget(budget);
                     updateSummary();
-                    saveConfig();
                 }
             } catch (NumberFormatException ex) {
                 showError("Please enter a valid number");
@@ -867,28 +973,171 @@ public class ExpenseTracker extends JFrame {
         }
     }
 
+    private void manageBudgets() {
+        while (true) {
+            List<BudgetMonitor.Budget> budgets = ledger.budgets();
+            DefaultListModel<String> labels = new DefaultListModel<>();
+            for (BudgetMonitor.Budget budget : budgets) {
+                labels.addElement(String.format("%s — $%.2f", budget.label(), budget.limit));
+            }
+            JList<String> list = new JList<>(labels);
+            list.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+            list.setVisibleRowCount(8);
+            JScrollPane scrollPane = new JScrollPane(list);
+            scrollPane.setPreferredSize(new Dimension(380, 200));
+
+            JPanel panel = new JPanel(new BorderLayout(10, 10));
+            panel.setBorder(new EmptyBorder(15, 15, 15, 15));
+            JLabel label = new JLabel("Category and rolling budgets:");
+            label.setFont(new Font("Segoe UI", Font.BOLD, 13));
+            panel.add(label, BorderLayout.NORTH);
+            panel.add(scrollPane, BorderLayout.CENTER);
+
+            Object[] options = {"Add...", "Remove", "Close"};
+            int choice = JOptionPane.showOptionDialog(this, panel, "Budgets",
+                JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null, options, options[2]);
+            if (choice == 0) {
+                addBudget();
+            } else if (choice == 1) {
+                if (list.getSelectedIndex() < 0) {
+                    showError("Please select a budget to remove");
+                } else {
+                    budgets.remove(list.getSelectedIndex());
+                    budgetsChanged(budgets);
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void addBudget() {
+        JPanel budgetPanel = new JPanel(new GridLayout(3, 2, 10, 15));
+        budgetPanel.setBorder(new EmptyBorder(15, 15, 15, 15));
+
+        JComboBox<String> categoryBox = new JComboBox<>();
+        categoryBox.addItem(ALL_CATEGORIES);
+        for (String category : CategoryRegistry.shared().labels()) {
+            categoryBox.addItem(category);
+        }
+        categoryBox.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+
+        JComboBox<String> periodBox = new JComboBox<>(BUDGET_PERIODS);
+        periodBox.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+
+        JTextField limitField = new JTextField();
+        limitField.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+
+        String[] labels = {"Category:", "Period:", "Limit:"};
+        JComponent[] fields = {categoryBox, periodBox, limitField};
+        for (int i = 0; i < labels.length; i++) {
+            JLabel label = new JLabel(labels[i]);
+            label.setFont(new Font("Segoe UI", Font.BOLD, 13));
+            budgetPanel.add(label);
+            budgetPanel.add(fields[i]);
+        }
+
+        int result = JOptionPane.showConfirmDialog(this, budgetPanel,
+            "Add Budget", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (result != JOptionPane.OK_OPTION) return;
+
+        try {
+            double limit = Double.parseDouble(limitField.getText().trim());
+            if (limit <= 0) {
+                showError("Budget must be positive");
+                return;
+            }
+            String category = categoryBox.getSelectedIndex() == 0 ? null : (String) categoryBox.getSelectedItem();
+            List<BudgetMonitor.Budget> budgets = ledger.budgets();
+            budgets.add(new BudgetMonitor.Budget(category, BUDGET_PERIOD_DAYS[periodBox.getSelectedIndex()], limit));
+            budgetsChanged(budgets);
+        } catch (NumberFormatException ex) {
+            showError("Please enter a valid number");
+        }
+    }
+
+    private void budgetsChanged(List<BudgetMonitor.Budget> budgets) {
+        ledger.setBudgets(budgets);
+        updateSummary();
+    }
+
+    private void addCategoryFilter(String label) {
+        JCheckBoxMenuItem item = new JCheckBoxMenuItem(label);
+        item.putClientProperty("CheckBoxMenuItem.doNotCloseOnMouseClick", true);
+        item.addActionListener(e -> categoryFilterChanged());
+        categoryFilters.add(item);
+        filterMenu.add(item);
+    }
+
+    private void categoryFilterChanged() {
+        int[] selected = selectedCategories();
+        if (selected == null) {
+            filterButton.setText(ALL_CATEGORIES + " ▾");
+        } else if (selected.length == 1) {
+            filterButton.setText(CategoryRegistry.shared().label(selected[0]) + " ▾");
+        } else {
+            filterButton.setText(selected.length + " categories ▾");
+        }
+        filterExpenses();
+    }
+
+    /** Ids of the ticked categories, or null if the filter shows all of them. */
+    private int[] selectedCategories() {
+        int[] selected = IntStream.range(0, categoryFilters.size())
+            .filter(id -> categoryFilters.get(id).isSelected())
+            .toArray();
+        return selected.length == 0 ? null : selected;
+    }
+
+    /**
+     * Shows the selected month, or with search text every matching expense
+     * in the history, narrowed to the ticked categories. Anything beyond the
+     * plain month view goes through the {@link SearchIndex} bitmaps in the
+     * background once typing pauses; see {@link SearchPipeline}.
+     */
     private void filterExpenses() {
-        String searchText = searchField.getText().toLowerCase().trim();
-        String selectedFilter = (String) filterCombo.getSelectedItem();
-        
-        tableModel.setRowCount(0);
-        
-        for (Expense expense : filteredExpenses) {
-            boolean matchesSearch = searchText.isEmpty() || 
-                expense.getDescription().toLowerCase().contains(searchText) ||
-                expense.getCategory().toLowerCase().contains(searchText);
-            
-            boolean matchesCategory = selectedFilter.equals("All Categories") ||
-                expense.getCategory().equals(selectedFilter);
-                
-            if (matchesSearch && matchesCategory) {
-                addExpenseToTable(expense, tableModel.getRowCount());
+        String searchText = searchField.getText().trim();
+        int[] categories = selectedCategories();
+        if (searchText.isEmpty() && categories == null) {
+            searchPipeline.cancel();
+            showExpenses(repository.findByMonth(YearMonth.from(currentMonth)));
+        } else {
+            YearMonth month = searchText.isEmpty() ? YearMonth.from(currentMonth) : null;
+            searchPipeline.request(new SearchPipeline.Query(searchText, categories, month), repository.searchIndex());
+        }
+    }
+
+    private void showSearchResults(SearchPipeline.Query query, long[] keys) {
+        if (keys != null) {
+            showExpenses(repository.findByKeys(keys));
+        } else if (query.text.isEmpty()) {
+            showExpenses(repository.findByMonth(query.month));
+        } else {
+            showExpenses(repository.search(query.text));
+        }
+    }
+
+    /**
+     * Shows the expenses of the ticked categories. Edits and deletes look
+     * rows up through the table model, so they hit the expense shown.
+     */
+    private void showExpenses(List<Expense> candidates) {
+        int[] categories = selectedCategories();
+        List<Expense> shown = new ArrayList<>(candidates.size());
+        for (Expense expense : candidates) {
+            if (categories == null || Arrays.binarySearch(categories, expense.getCategoryId()) >= 0) {
+                shown.add(expense);
             }
         }
+        tableModel.setExpenses(shown);
+    }
+
+    private boolean isFiltered() {
+        return !searchField.getText().trim().isEmpty() || selectedCategories() != null;
     }
 
     private void exportToCSV() {
-        if (expenses.isEmpty()) {
+        if (repository.count() == 0) {
             showError("No expenses to export");
             return;
         }
@@ -897,48 +1146,133 @@ public class ExpenseTracker extends JFrame {
         fileChooser.setDialogTitle("Export Expenses");
         fileChooser.setSelectedFile(new File("expenses_" + 
             new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ".csv"));
+        JCheckBox gzipBox = new JCheckBox("Compress (.gz)");
+        fileChooser.setAccessory(gzipBox);
         
         if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
-            try (PrintWriter writer = new PrintWriter(fileChooser.getSelectedFile())) {
-                writer.println("Date,Category,Description,Amount");
-                SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-                for (Expense expense : expenses) {
-                    writer.printf("%s,%s,\"%s\",%.2f%n",
-                        sdf.format(expense.getDate()),
-                        expense.getCategory(),
-                        expense.getDescription().replace("\"", "\"\""),
-                        expense.getAmount());
-                }
-                JOptionPane.showMessageDialog(this, 
-                    "✅ Expenses exported successfully!", 
-                    "Success", 
-                    JOptionPane.INFORMATION_MESSAGE);
-            } catch (IOException e) {
-                showError("Error exporting: " + e.getMessage());
+            File file = fileChooser.getSelectedFile();
+            boolean gzip = gzipBox.isSelected() || file.getName().endsWith(".gz");
+            if (gzip && !file.getName().endsWith(".gz")) {
+                file = new File(file.getPath() + ".gz");
             }
+            // Only a snapshot is taken here; the rows are built on the export thread
+            runExport(new ExportJob(repository.snapshotRows(), repository.count(), file, gzip));
         }
     }
 
+    private void runExport(ExportJob job) {
+        JDialog progressDialog = new JDialog(this, "Exporting", false);
+        JPanel panel = new JPanel(new BorderLayout(10, 10));
+        panel.setBorder(new EmptyBorder(15, 15, 15, 15));
+        
+        JProgressBar progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        progressBar.setPreferredSize(new Dimension(320, 28));
+        progressBar.setForeground(ACCENT_BLUE);
+        panel.add(new JLabel("Exporting to " + job.getFile().getName()), BorderLayout.NORTH);
+        panel.add(progressBar, BorderLayout.CENTER);
+        
+        JButton cancelBtn = createActionButton("Cancel", ACCENT_RED);
+        cancelBtn.addActionListener(e -> job.cancel(false));
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 0, 0));
+        buttonPanel.add(cancelBtn);
+        panel.add(buttonPanel, BorderLayout.SOUTH);
+        
+        progressDialog.add(panel);
+        progressDialog.pack();
+        progressDialog.setLocationRelativeTo(this);
+        
+        job.addPropertyChangeListener(evt -> {
+            if ("progress".equals(evt.getPropertyName())) {
+                progressBar.setValue((Integer) evt.getNewValue());
+            } else if ("state".equals(evt.getPropertyName()) && evt.getNewValue() == SwingWorker.StateValue.DONE) {
+                progressDialog.dispose();
+                if (job.isCancelled()) return;
+                try {
+                    job.get();
+                    JOptionPane.showMessageDialog(this, 
+                        "✅ Expenses exported successfully!", 
+                        "Success", 
+                        JOptionPane.INFORMATION_MESSAGE);
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    showError("Error exporting: " + cause.getMessage());
+                }
+            }
+        });
+        
+        progressDialog.setVisible(true);
+        job.execute();
+    }
+
+    private void importFromCSV() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Import Expenses");
+        if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+
+        File file = fileChooser.getSelectedFile();
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        new SwingWorker<ExpenseImporter.Result, Void>() {
+            @Override
+            protected ExpenseImporter.Result doInBackground() throws IOException {
+                return ExpenseImporter.read(file.toPath());
+            }
+
+            @Override
+            protected void done() {
+                setCursor(Cursor.getDefaultCursor());
+                ExpenseImporter.Result result;
+                try {
+                    result = get();
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    showError("Error importing: " + cause.getMessage());
+                    return;
+                }
+
+                // One batch insert and one table refresh for the whole file. Imports
+                // aren't undoable, and the history can't step back across one
+                repository.addAll(result.expenses);
+                history.forget();
+                updateUndoButtons();
+                refreshCategories();
+                filterByMonth();
+
+                StringBuilder message = new StringBuilder();
+                message.append(String.format("✅ Imported %d expenses (%.0f rows/s)",
+                    result.expenses.size(), result.rowsPerSecond()));
+                if (result.rejected > 0) {
+                    message.append(String.format("%n%d rows rejected:", result.rejected));
+                    for (String error : result.errors) {
+                        message.append(System.lineSeparator()).append("  ").append(error);
+                    }
+                }
+                JOptionPane.showMessageDialog(ExpenseTracker.this,
+                    message.toString(),
+                    "Import",
+                    result.rejected > 0 ? JOptionPane.WARNING_MESSAGE : JOptionPane.INFORMATION_MESSAGE);
+            }
+        }.execute();
+    }
+
     private void showCategoryReport() {
-        if (filteredExpenses.isEmpty()) {
+        YearMonth month = YearMonth.from(currentMonth);
+        ExpenseRollups rollups = repository.rollups();
+        if (rollups.monthCount(month) == 0) {
             showError("No expenses in current month");
             return;
         }
         
-        Map<String, Double> categoryTotals = new HashMap<>();
-        Map<String, Integer> categoryCount = new HashMap<>();
-        
-        for (Expense expense : filteredExpenses) {
-            categoryTotals.merge(expense.getCategory(), expense.getAmount(), Double::sum);
-            categoryCount.merge(expense.getCategory(), 1, Integer::sum);
-        }
+        CategoryRegistry categories = CategoryRegistry.shared();
+        double[] categoryTotals = rollups.categoryTotals(month);
+        int[] categoryCount = rollups.categoryCounts(month);
         
         StringBuilder report = new StringBuilder();
         report.append("<html><body style='font-family: Segoe UI; padding: 20px; width: 600px;'>");
         report.append("<h2 style='color: #111827; margin-bottom: 10px;'>📊 Category Report</h2>");
         report.append("<p style='color: #6B7280; margin-bottom: 25px;'>").append(getCurrentMonthLabel()).append("</p>");
         
-        double total = filteredExpenses.stream().mapToDouble(Expense::getAmount).sum();
+        double total = rollups.monthTotal(month);
         
         report.append("<table style='width: 100%; border-collapse: collapse;'>");
         report.append("<tr style='background: #F9FAFB; border-bottom: 2px solid #E5E7EB;'>");
@@ -948,11 +1282,13 @@ public class ExpenseTracker extends JFrame {
         report.append("<th style='padding: 12px; text-align: right; font-size: 12px; color: #6B7280;'>% OF TOTAL</th>");
         report.append("</tr>");
         
-        categoryTotals.entrySet().stream()
-            .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
-            .forEach(entry -> {
-                double percentage = (entry.getValue() / total) * 100;
-                int count = categoryCount.get(entry.getKey());
+        IntStream.range(0, categoryTotals.length)
+            .filter(id -> categoryCount[id] > 0)
+            .boxed()
+            .sorted(Comparator.comparingDouble((Integer id) -> categoryTotals[id]).reversed())
+            .forEach(id -> {
+                double percentage = (categoryTotals[id] / total) * 100;
+                int count = categoryCount[id];
                 report.append(String.format(
                     "<tr style='border-bottom: 1px solid #F3F4F6;'>" +
                     "<td style='padding: 14px; font-size: 14px; color: #111827;'>%s</td>" +
@@ -960,17 +1296,30 @@ public class ExpenseTracker extends JFrame {
                     "<td style='padding: 14px; text-align: right; font-size: 14px; font-weight: bold; color: #111827;'>$%.2f</td>" +
                     "<td style='padding: 14px; text-align: right; font-size: 14px; color: #2563EB;'>%.1f%%</td>" +
                     "</tr>",
-                    entry.getKey(), count, entry.getValue(), percentage));
+                    categories.label(id), count, categoryTotals[id], percentage));
             });
         
         report.append("<tr style='border-top: 2px solid #E5E7EB; background: #F9FAFB;'>");
         report.append("<td style='padding: 14px; font-weight: bold; color: #111827;'>TOTAL</td>");
-        report.append(String.format("<td style='padding: 14px; text-align: center; font-weight: bold; color: #111827;'>%d</td>", filteredExpenses.size()));
+        report.append(String.format("<td style='padding: 14px; text-align: center; font-weight: bold; color: #111827;'>%d</td>", rollups.monthCount(month)));
         report.append(String.format("<td style='padding: 14px; text-align: right; font-weight: bold; color: #111827; font-size: 16px;'>$%.2f</td>", total));
         report.append("<td style='padding: 14px; text-align: right; font-weight: bold; color: #111827;'>100%</td>");
         report.append("</tr>");
         
         report.append("</table>");
+
+        // Weekday split, straight from the cube's weekday cells
+        double[] weekdayTotals = rollups.weekdayTotals(month, -1);
+        report.append("<h3 style='color: #111827; margin-top: 25px; margin-bottom: 10px;'>By Weekday</h3>");
+        report.append("<table style='width: 100%; border-collapse: collapse;'><tr>");
+        for (int weekday = 0; weekday < weekdayTotals.length; weekday++) {
+            report.append(String.format(
+                "<td style='padding: 10px; text-align: center; font-size: 12px; color: #6B7280;'>%s<br>" +
+                "<strong style='font-size: 14px; color: #111827;'>$%.2f</strong></td>",
+                DayOfWeek.of(weekday + 1).getDisplayName(TextStyle.SHORT, Locale.getDefault()),
+                weekdayTotals[weekday]));
+        }
+        report.append("</tr></table>");
         report.append("</body></html>");
         
         JLabel reportLabel = new JLabel(report.toString());
@@ -978,50 +1327,143 @@ public class ExpenseTracker extends JFrame {
         scrollPane.setPreferredSize(new Dimension(700, 550));
         scrollPane.setBorder(new EmptyBorder(10, 10, 10, 10));
         
-        JOptionPane.showMessageDialog(this, scrollPane, 
-            "Category Report", JOptionPane.PLAIN_MESSAGE);
+        Object[] options = {"Close", "Drill Down..."};
+        int choice = JOptionPane.showOptionDialog(this, scrollPane, "Category Report",
+            JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
+        if (choice == 1) {
+            new DrillDownDialog(this, repository.allRollups(), month.getYear()).setVisible(true);
+        }
+    }
+
+    private void showMerchantReport() {
+        if (repository.count() == 0) {
+            showError("No expenses to analyze");
+            return;
+        }
+
+        // Estimates from a fixed-size sketch kept current by the repository
+        MerchantSketch merchants = repository.merchants();
+        StringBuilder report = new StringBuilder();
+        report.append("<html><body style='font-family: Segoe UI; padding: 20px; width: 600px;'>");
+        report.append("<h2 style='color: #111827; margin-bottom: 10px;'>🏪 Top Merchants</h2>");
+        report.append("<p style='color: #6B7280; margin-bottom: 15px;'>All time, grouped by description; figures are close upper bounds</p>");
+        appendMerchantTable(report, "Most Frequent", merchants.topByCount(MERCHANT_REPORT_SIZE));
+        appendMerchantTable(report, "Highest Spend", merchants.topBySpend(MERCHANT_REPORT_SIZE));
+        report.append("</body></html>");
+
+        JLabel reportLabel = new JLabel(report.toString());
+        JScrollPane scrollPane = new JScrollPane(reportLabel);
+        scrollPane.setPreferredSize(new Dimension(700, 550));
+        scrollPane.setBorder(new EmptyBorder(10, 10, 10, 10));
+
+        JOptionPane.showMessageDialog(this, scrollPane,
+            "Top Merchants", JOptionPane.PLAIN_MESSAGE);
+    }
+
+    private void showSpendingChart() {
+        if (repository.count() == 0) {
+            showError("No expenses to chart");
+            return;
+        }
+
+        // One total per day from the cube, through today or the last dated expense
+        ExpenseRollups rollups = repository.allRollups();
+        List<YearMonth> months = rollups.months();
+        LocalDate first = months.get(0).atDay(1);
+        LocalDate last = months.get(months.size() - 1).atEndOfMonth();
+        if (last.isBefore(LocalDate.now())) last = LocalDate.now();
+        SpendingChart chart = new SpendingChart(first, rollups.dailyTotals(first, last.plusDays(1)));
+
+        JComboBox<String> modeCombo = new JComboBox<>(new String[] {"Daily", "Cumulative"});
+        modeCombo.addActionListener(e -> chart.setCumulative(modeCombo.getSelectedIndex() == 1));
+        JLabel hint = new JLabel("Scroll to zoom, drag to pan, double-click to reset");
+        hint.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        hint.setForeground(TEXT_SECONDARY);
+
+        JPanel top = new JPanel(new BorderLayout(10, 0));
+        top.setBorder(new EmptyBorder(0, 0, 10, 0));
+        top.add(hint, BorderLayout.CENTER);
+        top.add(modeCombo, BorderLayout.EAST);
+
+        JPanel content = new JPanel(new BorderLayout());
+        content.setBorder(new EmptyBorder(15, 15, 15, 15));
+        content.add(top, BorderLayout.NORTH);
+        content.add(chart, BorderLayout.CENTER);
+
+        JDialog dialog = new JDialog(this, "Spending Chart", true);
+        dialog.setContentPane(content);
+        dialog.pack();
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+    }
+
+    private void appendMerchantTable(StringBuilder report, String title, List<MerchantSketch.Merchant> merchants) {
+        report.append("<h3 style='color: #111827; margin-top: 20px; margin-bottom: 10px;'>").append(title).append("</h3>");
+        report.append("<table style='width: 100%; border-collapse: collapse;'>");
+        report.append("<tr style='background: #F9FAFB; border-bottom: 2px solid #E5E7EB;'>");
+        report.append("<th style='padding: 10px; text-align: left; font-size: 12px; color: #6B7280;'>MERCHANT</th>");
+        report.append("<th style='padding: 10px; text-align: center; font-size: 12px; color: #6B7280;'>COUNT</th>");
+        report.append("<th style='padding: 10px; text-align: right; font-size: 12px; color: #6B7280;'>SPEND</th>");
+        report.append("</tr>");
+        for (MerchantSketch.Merchant merchant : merchants) {
+            report.append(String.format(
+                "<tr style='border-bottom: 1px solid #F3F4F6;'>" +
+                "<td style='padding: 10px; font-size: 14px; color: #111827;'>%s</td>" +
+                "<td style='padding: 10px; text-align: center; font-size: 14px; color: #6B7280;'>%d</td>" +
+                "<td style='padding: 10px; text-align: right; font-size: 14px; font-weight: bold; color: #111827;'>$%.2f</td>" +
+                "</tr>",
+                escapeHtml(merchant.label), merchant.count, merchant.spend));
+        }
+        report.append("</table>");
     }
 
     private void showAnalytics() {
-        if (expenses.isEmpty()) {
+        if (repository.count() == 0) {
             showError("No expenses to analyze");
             return;
         }
         
-        Map<String, Double> categoryTotals = new HashMap<>();
-        for (Expense expense : expenses) {
-            categoryTotals.merge(expense.getCategory(), expense.getAmount(), Double::sum);
-        }
+        // Totals are lookups in the rollups cube; the distribution takes one parallel pass
+        ExpenseRollups rollups = repository.allRollups();
+        ExpenseStatistics statistics = repository.statistics();
+        ExpenseStatistics.Distribution overall = statistics.overall();
+        List<YearMonth> months = rollups.months();
+        CategoryRegistry categories = CategoryRegistry.shared();
+        double[] categoryTotals = rollups.categoryTotals(months.get(0), months.get(months.size() - 1));
         
         StringBuilder analytics = new StringBuilder();
         analytics.append("<html><body style='font-family: Segoe UI; padding: 20px; width: 600px;'>");
         analytics.append("<h2 style='color: #111827; margin-bottom: 20px;'>📈 Overall Analytics</h2>");
         
-        double total = expenses.stream().mapToDouble(Expense::getAmount).sum();
-        double avgExpense = total / expenses.size();
+        double total = rollups.total();
+        int count = rollups.count();
+        double avgExpense = total / count;
         
-        // Find highest expense
-        Expense maxExpense = expenses.stream()
-            .max(Comparator.comparingDouble(Expense::getAmount))
-            .orElse(null);
+        Expense maxExpense = repository.findLargest();
         
         analytics.append("<div style='background: #F9FAFB; padding: 20px; border-radius: 8px; margin-bottom: 20px;'>");
         analytics.append(String.format("<p style='font-size: 14px; color: #6B7280; margin: 5px 0;'>Total Expenses: <strong style='color: #111827; font-size: 18px;'>$%.2f</strong></p>", total));
-        analytics.append(String.format("<p style='font-size: 14px; color: #6B7280; margin: 5px 0;'>Number of Transactions: <strong style='color: #111827;'>%d</strong></p>", expenses.size()));
+        analytics.append(String.format("<p style='font-size: 14px; color: #6B7280; margin: 5px 0;'>Number of Transactions: <strong style='color: #111827;'>%d</strong></p>", count));
         analytics.append(String.format("<p style='font-size: 14px; color: #6B7280; margin: 5px 0;'>Average Expense: <strong style='color: #111827;'>$%.2f</strong></p>", avgExpense));
         if (maxExpense != null) {
             analytics.append(String.format("<p style='font-size: 14px; color: #6B7280; margin: 5px 0;'>Largest Expense: <strong style='color: #DC2626;'>$%.2f</strong> (%s)</p>", 
                 maxExpense.getAmount(), maxExpense.getCategory()));
         }
+        analytics.append(String.format("<p style='font-size: 14px; color: #6B7280; margin: 5px 0;'>Median Expense: <strong style='color: #111827;'>$%.2f</strong></p>", overall.median()));
+        analytics.append(String.format("<p style='font-size: 14px; color: #6B7280; margin: 5px 0;'>90th / 99th Percentile: <strong style='color: #111827;'>$%.2f</strong> / <strong style='color: #111827;'>$%.2f</strong></p>",
+            overall.percentile(90), overall.percentile(99)));
+        analytics.append(String.format("<p style='font-size: 14px; color: #6B7280; margin: 5px 0;'>Standard Deviation: <strong style='color: #111827;'>$%.2f</strong></p>", overall.moments.standardDeviation()));
         analytics.append("</div>");
         
         analytics.append("<h3 style='color: #111827; margin-top: 25px; margin-bottom: 15px;'>Spending by Category</h3>");
         analytics.append("<table style='width: 100%; border-collapse: collapse;'>");
         
-        categoryTotals.entrySet().stream()
-            .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
-            .forEach(entry -> {
-                double percentage = (entry.getValue() / total) * 100;
+        IntStream.range(0, categoryTotals.length)
+            .filter(id -> categoryTotals[id] > 0)
+            .boxed()
+            .sorted(Comparator.comparingDouble((Integer id) -> categoryTotals[id]).reversed())
+            .forEach(id -> {
+                double percentage = (categoryTotals[id] / total) * 100;
                 String barWidth = String.format("%.0f%%", percentage);
                 analytics.append(String.format(
                     "<tr style='border-bottom: 1px solid #E5E7EB;'>" +
@@ -1033,10 +1475,37 @@ public class ExpenseTracker extends JFrame {
                     "</div></td>" +
                     "<td style='text-align: right; padding: 12px 0 12px 15px; font-size: 15px; font-weight: bold; color: #111827;'>$%.2f</td>" +
                     "</tr>",
-                    entry.getKey(), barWidth, percentage, entry.getValue()));
+                    categories.label(id), barWidth, percentage, categoryTotals[id]));
             });
         
         analytics.append("</table>");
+
+        analytics.append("<h3 style='color: #111827; margin-top: 25px; margin-bottom: 15px;'>Distribution by Category</h3>");
+        analytics.append("<table style='width: 100%; border-collapse: collapse;'>");
+        analytics.append("<tr style='background: #F9FAFB; border-bottom: 2px solid #E5E7EB;'>");
+        for (String column : new String[] {"CATEGORY", "COUNT", "MEAN", "MEDIAN", "P90", "STD DEV"}) {
+            analytics.append("<th style='padding: 10px; text-align: right; font-size: 11px; color: #6B7280;'>").append(column).append("</th>");
+        }
+        analytics.append("</tr>");
+        IntStream.range(0, categoryTotals.length)
+            .filter(id -> statistics.category(id) != null)
+            .boxed()
+            .sorted(Comparator.comparingDouble((Integer id) -> categoryTotals[id]).reversed())
+            .forEach(id -> {
+                ExpenseStatistics.Distribution distribution = statistics.category(id);
+                analytics.append(String.format(
+                    "<tr style='border-bottom: 1px solid #F3F4F6;'>" +
+                    "<td style='padding: 10px; font-size: 13px; color: #111827;'>%s</td>" +
+                    "<td style='padding: 10px; text-align: right; font-size: 13px; color: #6B7280;'>%d</td>" +
+                    "<td style='padding: 10px; text-align: right; font-size: 13px; color: #111827;'>$%.2f</td>" +
+                    "<td style='padding: 10px; text-align: right; font-size: 13px; color: #111827;'>$%.2f</td>" +
+                    "<td style='padding: 10px; text-align: right; font-size: 13px; color: #111827;'>$%.2f</td>" +
+                    "<td style='padding: 10px; text-align: right; font-size: 13px; color: #6B7280;'>$%.2f</td>" +
+                    "</tr>",
+                    categories.label(id), distribution.moments.count(), distribution.moments.mean(),
+                    distribution.median(), distribution.percentile(90), distribution.moments.standardDeviation()));
+            });
+        analytics.append("</table>");
         analytics.append("</body></html>");
         
         JLabel analyticsLabel = new JLabel(analytics.toString());
@@ -1049,33 +1518,24 @@ public class ExpenseTracker extends JFrame {
     }
 
     private void updateSummary() {
+        // Totals come from the repository's rollups, kept current on every change
+        ExpenseRollups rollups = repository.rollups();
+
         // Month total
-        double monthTotal = filteredExpenses.stream().mapToDouble(Expense::getAmount).sum();
+        double monthTotal = rollups.monthTotal(YearMonth.from(currentMonth));
         totalLabel.setText(String.format("$%.2f", monthTotal));
         
         // Today total
         LocalDate today = LocalDate.now();
-        double todayTotal = filteredExpenses.stream()
-            .filter(e -> {
-                LocalDate expDate = e.getDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-                return expDate.equals(today);
-            })
-            .mapToDouble(Expense::getAmount)
-            .sum();
+        double todayTotal = rollups.dayTotal(today);
         todayLabel.setText(String.format("$%.2f", todayTotal));
         
         // Week total
-        LocalDate weekStart = today.minusDays(today.getDayOfWeek().getValue() - 1);
-        double weekTotal = filteredExpenses.stream()
-            .filter(e -> {
-                LocalDate expDate = e.getDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-                return !expDate.isBefore(weekStart) && !expDate.isAfter(today);
-            })
-            .mapToDouble(Expense::getAmount)
-            .sum();
+        double weekTotal = rollups.weekTotal(today);
         weekLabel.setText(String.format("$%.2f", weekTotal));
 
         // Budget tracking
+        double monthlyBudget = ledger.monthlyBudget();
         if (monthlyBudget > 0) {
             double remaining = monthlyBudget - monthTotal;
             double percentUsed = (monthTotal / monthlyBudget) * 100;
@@ -1086,16 +1546,9 @@ public class ExpenseTracker extends JFrame {
             if (remaining >= 0) {
                 budgetStatusLabel.setText(String.format("$%.2f of $%.2f remaining", remaining, monthlyBudget));
                 
-                if (percentUsed >= 90) {
-                    budgetBar.setForeground(ACCENT_RED);
-                    budgetStatusLabel.setForeground(ACCENT_RED);
-                } else if (percentUsed >= 75) {
-                    budgetBar.setForeground(ACCENT_ORANGE);
-                    budgetStatusLabel.setForeground(ACCENT_ORANGE);
-                } else {
-                    budgetBar.setForeground(ACCENT_GREEN);
-                    budgetStatusLabel.setForeground(ACCENT_GREEN);
-                }
+                Color color = budgetColor(percentUsed / 100);
+                budgetBar.setForeground(color);
+                budgetStatusLabel.setForeground(color);
             } else {
                 budgetStatusLabel.setText(String.format("⚠️ Over budget by $%.2f", Math.abs(remaining)));
                 budgetStatusLabel.setForeground(ACCENT_RED);
@@ -1108,6 +1561,45 @@ public class ExpenseTracker extends JFrame {
             budgetBar.setString("Set a budget to track spending");
             budgetBar.setForeground(new Color(209, 213, 219));
         }
+
+        updateBudgetRows();
+    }
+
+    /** Shows each category and rolling budget from the monitor's running totals. */
+    private void updateBudgetRows() {
+        List<BudgetMonitor.Status> statuses = ledger.budgetStatuses(LocalDate.now());
+        budgetRows.removeAll();
+        for (BudgetMonitor.Status status : statuses) {
+            JPanel row = new JPanel(new BorderLayout(10, 0));
+            row.setBackground(BG_SECONDARY);
+            row.setMaximumSize(new Dimension(400, BUDGET_ROW_HEIGHT));
+            row.setAlignmentX(Component.LEFT_ALIGNMENT);
+
+            JLabel name = new JLabel(status.budget.label());
+            name.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+            name.setForeground(TEXT_PRIMARY);
+            row.add(name, BorderLayout.WEST);
+
+            JLabel spent = new JLabel(String.format("%s$%.2f / $%.2f (%.0f%%)", status.isOver() ? "⚠️ " : "",
+                status.spent, status.budget.limit, status.fraction() * 100));
+            spent.setFont(new Font("Segoe UI", Font.BOLD, 12));
+            spent.setForeground(budgetColor(status.fraction()));
+            row.add(spent, BorderLayout.EAST);
+            budgetRows.add(row);
+        }
+
+        int height = STATS_CARD_HEIGHT + statuses.size() * BUDGET_ROW_HEIGHT;
+        statsPanel.setPreferredSize(new Dimension(380, height));
+        statsPanel.setMaximumSize(new Dimension(380, height));
+        statsPanel.revalidate();
+        statsPanel.repaint();
+    }
+
+    /** Bar colour for a budget used up to {@code fraction}: green, then orange and red past the alert thresholds. */
+    private static Color budgetColor(double fraction) {
+        if (fraction >= BudgetMonitor.ALERT) return ACCENT_RED;
+        if (fraction >= BudgetMonitor.WARNING) return ACCENT_ORANGE;
+        return ACCENT_GREEN;
     }
 
     private void clearInputFields() {
@@ -1119,77 +1611,51 @@ public class ExpenseTracker extends JFrame {
         amountField.requestFocus();
     }
 
+    /** Descriptions are typed by the user, so they are escaped before going into report HTML. */
+    private static String escapeHtml(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
     private void showError(String message) {
         JOptionPane.showMessageDialog(this, message, "Error", JOptionPane.ERROR_MESSAGE);
     }
 
     private void loadExpenses() {
-        File dataFile = new File(DATA_FILE);
-        if (!dataFile.exists()) {
-            dataFile.getParentFile().mkdirs();
-            return;
-        }
-        
-        try (BufferedReader reader = new BufferedReader(new FileReader(DATA_FILE))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                Expense expense = Expense.fromString(line);
-                if (expense != null) {
-                    expenses.add(expense);
-                }
-            }
+        try {
+            ExpenseLoader.Result result = ledger.load();
+            // Load throughput, on hover, like the search metrics
+            historyLabel.setToolTipText(String.format("Loaded %d expenses in %.0f ms (%.0f rows/s)",
+                result.expenses.size(), result.nanos / 1e6, result.rowsPerSecond()));
+            refreshCategories();
             
             filterByMonth();
             
         } catch (IOException e) {
             System.err.println("Error loading expenses: " + e.getMessage());
         }
-    }
 
-    private void saveExpenses() {
-        try {
-            File dataFile = new File(DATA_FILE);
-            dataFile.getParentFile().mkdirs();
-            
-            try (PrintWriter writer = new PrintWriter(new FileWriter(dataFile))) {
-                for (Expense expense : expenses) {
-                    writer.println(expense.toString());
-                }
-            }
-        } catch (IOException e) {
-            showError("Error saving expenses: " + e.getMessage());
-        }
+        // Fold the journal back into the snapshot once it grows large
+        javax.swing.Timer compactionTimer = new javax.swing.Timer(COMPACTION_CHECK_MS, e -> repository.compactIfNeeded());
+        compactionTimer.start();
     }
 
-    private void loadConfig() {
-        try (BufferedReader reader = new BufferedReader(new FileReader(CONFIG_FILE))) {
-            String line = reader.readLine();
-            if (line != null) {
-                monthlyBudget = Double.parseDouble(line);
-                updateSummary();
-            }
-        } catch (IOException | NumberFormatException e) {
-            // Config doesn't exist or invalid, use default
-        }
-    }
+    /** Adds categories registered since the combos were filled and saves the user-defined ones. */
+    private void refreshCategories() {
+        CategoryRegistry categories = CategoryRegistry.shared();
+        int known = categoryFilters.size();
+        if (categories.size() == known) return;
 
-    private void saveConfig() {
-        try {
-            File configFile = new File(CONFIG_FILE);
-            configFile.getParentFile().mkdirs();
-            
-            try (PrintWriter writer = new PrintWriter(new FileWriter(configFile))) {
-                writer.println(monthlyBudget);
-            }
-        } catch (IOException e) {
-            System.err.println("Error saving config: " + e.getMessage());
+        for (int id = known; id < categories.size(); id++) {
+            addCategoryFilter(categories.label(id));
+            categoryCombo.addItem(categories.label(id));
         }
+        ledger.saveCategories();
     }
 
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
             ExpenseTracker tracker = new ExpenseTracker();
-            tracker.loadConfig();
+            tracker.ledger.loadConfig();
             tracker.loadExpenses();
             tracker.setVisible(true);
         });
@@ -0,0 +1,98 @@
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.zip.GZIPOutputStream;
+import javax.swing.SwingWorker;
+
+/**
+ * Writes expenses in the {@code Date,Category,Description,Amount} export
+ * format on a background thread. Progress is published through
+ * {@link #setProgress(int)}, the job can be cancelled, and the output is
+ * optionally gzip-compressed.
+ */
+public class ExportJob extends SwingWorker<Integer, Void> {
+
+    public static final String HEADER = "Date,Category,Description,Amount";
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int PROGRESS_STEP = 4096;
+    private static final DateTimeFormatter DATE_FORMAT =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final Iterable<Expense> expenses;
+    private final int count;
+    private final File file;
+    private final boolean gzip;
+
+    /**
+     * Job writing {@code count} expenses, whose rows are iterated on the
+     * worker thread, so they may be built or read as they are written.
+     */
+    public ExportJob(Iterable<Expense> expenses, int count, File file, boolean gzip) {
+        this.expenses = expenses;
+        this.count = count;
+        this.file = file;
+        this.gzip = gzip;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    protected Integer doInBackground() throws IOException {
+        int written = 0;
+        try (Writer writer = new OutputStreamWriter(open(), StandardCharsets.UTF_8)) {
+            StringBuilder row = new StringBuilder(128);
+            writer.write(HEADER);
+            writer.write(System.lineSeparator());
+
+            for (Expense expense : expenses) {
+                if (isCancelled()) break;
+
+                row.setLength(0);
+                DATE_FORMAT.formatTo(Instant.ofEpochMilli(expense.getTimestamp()), row);
+                // The category combo is editable, so a category may hold commas or quotes too
+                row.append(',');
+                appendQuoted(row, expense.getCategory());
+                row.append(',');
+                appendQuoted(row, expense.getDescription());
+                row.append(',');
+                ExpenseCodec.appendAmount(row, expense.getAmount());
+                row.append(System.lineSeparator());
+                writer.append(row);
+
+                if (++written % PROGRESS_STEP == 0) {
+                    setProgress((int) Math.min(written * 100L / Math.max(count, 1), 99));
+                }
+            }
+        } catch (UncheckedIOException e) {
+            // A segment that couldn't be read while iterating
+            throw e.getCause();
+        }
+
+        if (isCancelled()) {
+            Files.deleteIfExists(file.toPath());
+        } else {
+            setProgress(100);
+        }
+        return written;
+    }
+
+    private static void appendQuoted(StringBuilder row, String text) {
+        row.append('"').append(text.replace("\"", "\"\"")).append('"');
+    }
+
+    private OutputStream open() throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+        return gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : out;
+    }
+}
@@ -0,0 +1,334 @@
+import java.io.IOException;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Stores expenses in an embedded SQL database through plain JDBC, for
+ * example H2 ({@code jdbc:h2:./data/expenses}) or SQLite
+ * ({@code jdbc:sqlite:data/expenses.db}). No driver ships with the app; the
+ * one for the configured URL just has to be on the classpath.
+ *
+ * <p>The timestamp is the primary key, so month, week and day views are
+ * range scans on it, and category queries use their own index. Statements
+ * run on the EDT; an embedded database answers them in microseconds.
+ */
+public class JdbcExpenseRepository implements ExpenseRepository {
+
+    private static final String COLUMNS = "ts, amount, category, description";
+    private static final int BATCH_SIZE = 1000;
+
+    private final Connection connection;
+    private final Consumer<String> errorHandler;
+    private final ExpenseRollups rollups = new ExpenseRollups();
+    // Built by the first merchant report, then kept current
+    private MerchantSketch merchants;
+    // Built when budgets are first set, then kept current
+    private BudgetMonitor budgets;
+
+    private JdbcExpenseRepository(Connection connection, Consumer<String> errorHandler) {
+        this.connection = connection;
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Connects to {@code url}, failing if no driver on the classpath accepts
+     * it. Failed statements are reported to {@code errorHandler} on the
+     * calling thread.
+     */
+    public static JdbcExpenseRepository open(String url, Consumer<String> errorHandler) throws SQLException {
+        return new JdbcExpenseRepository(DriverManager.getConnection(url), errorHandler);
+    }
+
+    @Override
+    public ExpenseLoader.Result load() throws IOException {
+        long start = System.nanoTime();
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS expenses ("
+                + "ts BIGINT PRIMARY KEY, amount DOUBLE NOT NULL, "
+                + "category VARCHAR(100) NOT NULL, description VARCHAR(1000) NOT NULL)");
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS expenses_category ON expenses (category, ts)");
+            try (ResultSet result = statement.executeQuery("SELECT ts, amount, category FROM expenses")) {
+                CategoryRegistry categories = CategoryRegistry.shared();
+                while (result.next()) {
+                    rollups.add(result.getLong(1), Math.round(result.getDouble(2) * 100),
+                        categories.idOf(result.getString(3)));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Error preparing database: " + e.getMessage(), e);
+        }
+        List<Expense> current = findByMonth(YearMonth.now());
+        return new ExpenseLoader.Result(current, null, 0, System.nanoTime() - start);
+    }
+
+    @Override
+    public List<Expense> findByMonth(YearMonth month) {
+        return findBetween(month.atDay(1), month.plusMonths(1).atDay(1));
+    }
+
+    @Override
+    public List<Expense> findAll() {
+        return query("SELECT " + COLUMNS + " FROM expenses ORDER BY ts DESC");
+    }
+
+    @Override
+    public List<Expense> findBetween(LocalDate from, LocalDate to) {
+        return query("SELECT " + COLUMNS + " FROM expenses WHERE ts >= ? AND ts < ? ORDER BY ts DESC",
+            millis(from), millis(to));
+    }
+
+    @Override
+    public double totalBetween(LocalDate from, LocalDate to) {
+        try (PreparedStatement statement = prepare("SELECT SUM(amount) FROM expenses WHERE ts >= ? AND ts < ?",
+                 millis(from), millis(to));
+             ResultSet result = statement.executeQuery()) {
+            return result.next() ? result.getDouble(1) : 0;
+        } catch (SQLException e) {
+            reportError("Error reading expenses", e);
+            return 0;
+        }
+    }
+
+    @Override
+    public List<Expense> findByCategory(String category) {
+        return query("SELECT " + COLUMNS + " FROM expenses WHERE category = ? ORDER BY ts DESC", category);
+    }
+
+    @Override
+    public List<Expense> search(String text) {
+        String pattern = "%" + text.toLowerCase()
+            .replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        return query("SELECT " + COLUMNS + " FROM expenses "
+            + "WHERE LOWER(description) LIKE ? ESCAPE '\\' OR LOWER(category) LIKE ? ESCAPE '\\' "
+            + "ORDER BY ts DESC", pattern, pattern);
+    }
+
+    @Override
+    public List<Expense> findByKeys(long[] keys) {
+        List<Expense> result = new ArrayList<>(keys.length);
+        for (long key : keys) {
+            result.addAll(query("SELECT " + COLUMNS + " FROM expenses WHERE ts = ?", key));
+        }
+        return result;
+    }
+
+    @Override
+    public Expense findLargest() {
+        List<Expense> largest = query("SELECT " + COLUMNS + " FROM expenses "
+            + "WHERE amount = (SELECT MAX(amount) FROM expenses) ORDER BY ts DESC");
+        return largest.isEmpty() ? null : largest.get(0);
+    }
+
+    @Override
+    public ExpenseRollups rollups() {
+        return rollups;
+    }
+
+    @Override
+    public int count() {
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM expenses")) {
+            return result.next() ? result.getInt(1) : 0;
+        } catch (SQLException e) {
+            reportError("Error reading expenses", e);
+            return 0;
+        }
+    }
+
+    @Override
+    public MerchantSketch merchants() {
+        if (merchants == null) {
+            try (Statement statement = connection.createStatement();
+                 ResultSet result = statement.executeQuery("SELECT description, amount FROM expenses")) {
+                MerchantSketch sketch = new MerchantSketch(List.of());
+                while (result.next()) {
+                    sketch.add(result.getString(1), Math.round(result.getDouble(2) * 100));
+                }
+                merchants = sketch;
+            } catch (SQLException e) {
+                reportError("Error reading expenses", e);
+                return new MerchantSketch(List.of());
+            }
+        }
+        return merchants;
+    }
+
+    @Override
+    public BudgetMonitor budgets() {
+        if (budgets == null) {
+            budgets = new BudgetMonitor(rollups);
+        }
+        return budgets;
+    }
+
+    @Override
+    public void add(Expense expense) {
+        addAll(List.of(expense));
+    }
+
+    @Override
+    public void addAll(List<Expense> expenses) {
+        try (PreparedStatement exists = connection.prepareStatement("SELECT 1 FROM expenses WHERE ts = ?");
+             PreparedStatement insert = connection.prepareStatement(
+                 "INSERT INTO expenses (" + COLUMNS + ") VALUES (?, ?, ?, ?)")) {
+            connection.setAutoCommit(false);
+            long previous = Long.MIN_VALUE;
+            int batched = 0;
+            for (Expense expense : expenses) {
+                // Rows are oldest first, so a key only has to clear the database and the previous row
+                long timestamp = Math.max(expense.getTimestamp(), previous + 1);
+                while (contains(exists, timestamp)) {
+                    timestamp++;
+                }
+                expense.setDate(new Date(timestamp));
+                previous = timestamp;
+
+                insert.setLong(1, timestamp);
+                insert.setDouble(2, expense.getAmount());
+                insert.setString(3, expense.getCategory());
+                insert.setString(4, expense.getDescription());
+                insert.addBatch();
+                if (++batched % BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+            for (Expense expense : expenses) {
+                rollups.add(expense);
+                if (merchants != null) merchants.add(expense);
+                if (budgets != null) budgets.add(expense);
+            }
+        } catch (SQLException e) {
+            rollback();
+            reportError("Error saving expenses", e);
+        } finally {
+            autoCommit();
+        }
+    }
+
+    @Override
+    public void update(Expense expense) {
+        List<Expense> stored = query("SELECT " + COLUMNS + " FROM expenses WHERE ts = ?", expense.getTimestamp());
+        if (!stored.isEmpty() && execute("UPDATE expenses SET amount = ?, category = ?, description = ? WHERE ts = ?",
+                expense.getAmount(), expense.getCategory(), expense.getDescription(), expense.getTimestamp())) {
+            stored.forEach(rollups::remove);
+            rollups.add(expense);
+            if (merchants != null) {
+                stored.forEach(merchants::remove);
+                merchants.add(expense);
+            }
+            if (budgets != null) {
+                stored.forEach(budgets::remove);
+                budgets.add(expense);
+            }
+        }
+    }
+
+    @Override
+    public void delete(Expense expense) {
+        List<Expense> stored = query("SELECT " + COLUMNS + " FROM expenses WHERE ts = ?", expense.getTimestamp());
+        if (execute("DELETE FROM expenses WHERE ts = ?", expense.getTimestamp())) {
+            stored.forEach(rollups::remove);
+            if (merchants != null) stored.forEach(merchants::remove);
+            if (budgets != null) stored.forEach(budgets::remove);
+        }
+    }
+
+    @Override
+    public void clear() {
+        if (execute("DELETE FROM expenses")) {
+            rollups.clear();
+            if (merchants != null) merchants.clear();
+            if (budgets != null) budgets.clear();
+        }
+    }
+
+    @Override
+    public void compactIfNeeded() {
+        // The database manages its own files
+    }
+
+    @Override
+    public void close() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing database: " + e.getMessage());
+        }
+    }
+
+    private static long millis(LocalDate date) {
+        return date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static boolean contains(PreparedStatement exists, long timestamp) throws SQLException {
+        exists.setLong(1, timestamp);
+        try (ResultSet result = exists.executeQuery()) {
+            return result.next();
+        }
+    }
+
+    private List<Expense> query(String sql, Object... parameters) {
+        List<Expense> expenses = new ArrayList<>();
+        try (PreparedStatement statement = prepare(sql, parameters);
+             ResultSet result = statement.executeQuery()) {
+            while (result.next()) {
+                expenses.add(new Expense(result.getDouble(2), result.getString(3),
+                    result.getString(4), result.getLong(1)));
+            }
+        } catch (SQLException e) {
+            reportError("Error reading expenses", e);
+        }
+        return expenses;
+    }
+
+    private boolean execute(String sql, Object... parameters) {
+        try (PreparedStatement statement = prepare(sql, parameters)) {
+            statement.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            reportError("Error saving expenses", e);
+            return false;
+        }
+    }
+
+    private PreparedStatement prepare(String sql, Object... parameters) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+        try {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+        } catch (SQLException e) {
+            statement.close();
+            throw e;
+        }
+        return statement;
+    }
+
+    private void rollback() {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            System.err.println("Error rolling back: " + e.getMessage());
+        }
+    }
+
+    private void autoCommit() {
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            System.err.println("Error restoring auto-commit: " + e.getMessage());
+        }
+    }
+
+    private void reportError(String message, SQLException e) {
+        errorHandler.accept(message + ": " + e.getMessage());
+    }
+}
@@ -0,0 +1,266 @@
+import java.text.Normalizer;
+import java.util.*;
+
+/**
+ * Most frequent and most expensive merchants, read from expense
+ * descriptions, in a fixed amount of memory however many distinct
+ * descriptions there are. Descriptions are normalized first, so "Mcdo",
+ * "mcdo " and "MCDO #42" count as one merchant.
+ *
+ * <p>Two Space-Saving summaries, one weighted by rows and one by cents, keep
+ * the candidates: each tracks a fixed number of keys and, when a new key
+ * arrives while full, takes over the smallest counter, so a key that is
+ * truly frequent can't be missed. A Count-Min sketch of rows and cents
+ * gives a second upper bound for any key and, unlike Space-Saving, also
+ * takes removals, so edits and deletes are reflected; a candidate's figure
+ * is the smaller of the two bounds. Not thread-safe.
+ */
+public class MerchantSketch {
+
+    private static final int CANDIDATES = 256;
+    private static final int DEPTH = 4;
+    private static final int WIDTH = 8192;
+    private static final long[] SEEDS = {
+        0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L
+    };
+
+    /** A merchant in a report: its normalized key, the last description seen for it and its estimates. */
+    public static class Merchant {
+        public final String key;
+        public final String label;
+        public final long count;
+        public final double spend;
+
+        Merchant(String key, String label, long count, double spend) {
+            this.key = key;
+            this.label = label;
+            this.count = count;
+            this.spend = spend;
+        }
+    }
+
+    /**
+     * Space-Saving summary. Counters stay in their slot; a min-heap of slot
+     * numbers orders them by weight, so sifting never touches the key map.
+     */
+    private static class SpaceSaving {
+        final String[] keys = new String[CANDIDATES];
+        final String[] labels = new String[CANDIDATES];
+        final long[] weights = new long[CANDIDATES];
+        final int[] heap = new int[CANDIDATES];
+        final int[] positions = new int[CANDIDATES];
+        final Map<String, Integer> slots = new HashMap<>();
+        int size;
+
+        void add(String key, String label, long weight) {
+            Integer slot = slots.get(key);
+            if (slot == null && size < CANDIDATES) {
+                // A new counter starts at the bottom of the heap, so it can only move up
+                slot = size;
+                heap[size] = slot;
+                positions[slot] = size++;
+                keys[slot] = key;
+                labels[slot] = label;
+                weights[slot] = weight;
+                slots.put(key, slot);
+                siftUp(positions[slot]);
+                return;
+            }
+            if (slot == null) {
+                // Take over the smallest counter; its weight is this key's possible overcount
+                slot = heap[0];
+                slots.remove(keys[slot]);
+                keys[slot] = key;
+                slots.put(key, slot);
+            }
+            labels[slot] = label;
+            weights[slot] += weight;
+            siftDown(positions[slot]);
+        }
+
+        void remove(String key, long weight) {
+            Integer slot = slots.get(key);
+            if (slot == null) return;
+            weights[slot] = Math.max(0, weights[slot] - weight);
+            siftUp(positions[slot]);
+        }
+
+        void clear() {
+            Arrays.fill(keys, null);
+            Arrays.fill(labels, null);
+            slots.clear();
+            size = 0;
+        }
+
+        private void siftUp(int position) {
+            while (position > 0 && weights[heap[(position - 1) / 2]] > weights[heap[position]]) {
+                swap(position, (position - 1) / 2);
+                position = (position - 1) / 2;
+            }
+        }
+
+        private void siftDown(int position) {
+            while (2 * position + 1 < size) {
+                int child = 2 * position + 1;
+                if (child + 1 < size && weights[heap[child + 1]] < weights[heap[child]]) child++;
+                if (weights[heap[position]] <= weights[heap[child]]) return;
+                swap(position, child);
+                position = child;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int slot = heap[i];
+            heap[i] = heap[j];
+            heap[j] = slot;
+            positions[heap[i]] = i;
+            positions[heap[j]] = j;
+        }
+    }
+
+    private final SpaceSaving byCount = new SpaceSaving();
+    private final SpaceSaving bySpend = new SpaceSaving();
+    private final long[][] counts = new long[DEPTH][WIDTH];
+    private final long[][] cents = new long[DEPTH][WIDTH];
+
+    /** Builds a sketch of {@code expenses}. */
+    public MerchantSketch(Iterable<Expense> expenses) {
+        for (Expense expense : expenses) {
+            add(expense);
+        }
+    }
+
+    public void add(Expense expense) {
+        add(expense.getDescription(), Math.round(expense.getAmount() * 100));
+    }
+
+    public void remove(Expense expense) {
+        remove(expense.getDescription(), Math.round(expense.getAmount() * 100));
+    }
+
+    public void add(String description, long amountCents) {
+        String key = normalize(description);
+        if (key.isEmpty()) return;
+        update(key, 1, amountCents);
+        byCount.add(key, description.trim(), 1);
+        if (amountCents > 0) bySpend.add(key, description.trim(), amountCents);
+    }
+
+    public void remove(String description, long amountCents) {
+        String key = normalize(description);
+        if (key.isEmpty()) return;
+        update(key, -1, -amountCents);
+        byCount.remove(key, 1);
+        if (amountCents > 0) bySpend.remove(key, amountCents);
+    }
+
+    public void clear() {
+        byCount.clear();
+        bySpend.clear();
+        for (int row = 0; row < DEPTH; row++) {
+            Arrays.fill(counts[row], 0);
+            Arrays.fill(cents[row], 0);
+        }
+    }
+
+    /** Up to {@code limit} merchants with the most expenses, most first. */
+    public List<Merchant> topByCount(int limit) {
+        return top(byCount, limit, Comparator.comparingLong((Merchant m) -> m.count).reversed());
+    }
+
+    /** Up to {@code limit} merchants with the highest spend, highest first. */
+    public List<Merchant> topBySpend(int limit) {
+        return top(bySpend, limit, Comparator.comparingDouble((Merchant m) -> m.spend).reversed());
+    }
+
+    /**
+     * Merchant key of a description: accents, punctuation and case dropped,
+     * whitespace collapsed, and number-only words after the first one
+     * (store numbers, references) removed.
+     */
+    public static String normalize(String description) {
+        // Decomposing only matters for accented text, and most descriptions are plain ASCII
+        String folded = isAscii(description) ? description : Normalizer.normalize(description, Normalizer.Form.NFKD);
+        StringBuilder key = new StringBuilder(folded.length());
+        int wordStart = -1;
+        boolean digitsOnly = true;
+        for (int i = 0; i <= folded.length(); i++) {
+            char c = i < folded.length() ? folded.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                if (wordStart < 0) {
+                    if (key.length() > 0) key.append(' ');
+                    wordStart = key.length();
+                    digitsOnly = true;
+                }
+                key.append(Character.toLowerCase(c));
+                digitsOnly &= c >= '0' && c <= '9';
+            } else if (wordStart >= 0 && Character.getType(c) != Character.NON_SPACING_MARK) {
+                if (digitsOnly && wordStart > 0) key.setLength(wordStart - 1);
+                wordStart = -1;
+            }
+        }
+        return key.toString();
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) return false;
+        }
+        return true;
+    }
+
+    private List<Merchant> top(SpaceSaving summary, int limit, Comparator<Merchant> order) {
+        List<Merchant> merchants = new ArrayList<>(summary.size);
+        for (int slot = 0; slot < summary.size; slot++) {
+            String key = summary.keys[slot];
+            long count = estimate(counts, key);
+            long spend = estimate(cents, key);
+            // The summary's own counter is an upper bound too, for its weighting
+            if (summary == byCount) count = Math.min(count, summary.weights[slot]);
+            if (summary == bySpend) spend = Math.min(spend, summary.weights[slot]);
+            if (count > 0) merchants.add(new Merchant(key, summary.labels[slot], count, spend / 100.0));
+        }
+        merchants.sort(order);
+        return merchants.subList(0, Math.min(limit, merchants.size()));
+    }
+
+    private void update(String key, long count, long amountCents) {
+        long hash = hash(key);
+        for (int row = 0; row < DEPTH; row++) {
+            int column = column(hash, row);
+            counts[row][column] += count;
+            cents[row][column] += amountCents;
+        }
+    }
+
+    private static long estimate(long[][] table, String key) {
+        long hash = hash(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, table[row][column(hash, row)]);
+        }
+        return Math.max(0, estimate);
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a key. Every row's column comes from it, so with
+     * the 32-bit {@link String#hashCode} two colliding merchants would share
+     * a cell in every row and the minimum couldn't tell them apart.
+     */
+    private static long hash(String key) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    private static int column(long hash, int row) {
+        long h = (hash ^ SEEDS[row]) * 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (int) (h & (WIDTH - 1));
+    }
+}
@@ -0,0 +1,663 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Stores one segment file per month plus a small manifest of per-month
+ * counts and totals. Startup reads the manifest and the current month only;
+ * other months are paged in when the UI navigates to them, and months nobody
+ * is looking at are evicted once they are safely on disk. The first text
+ * search reads every month once to fill a {@link SearchIndex}; later
+ * searches only read the months that have hits.
+ *
+ * <p>Once a report has needed every month, the rollups cube is saved next to
+ * the manifest with the same generation, so later sessions answer reports
+ * over the whole history without reading segments. Months changed by the
+ * journal since then are recomputed when it is folded in.
+ */
+public class PartitionedExpenseRepository implements ExpenseRepository {
+
+    public static final String MANIFEST = "manifest.csv";
+    public static final String CUBE = "cube.bin";
+    private static final String FORMAT_PREFIX = "#format,";
+    private static final int MAX_LOADED_MONTHS = 4;
+
+    /** Manifest entry for one month; the largest expense's key is -1 if the manifest predates it. */
+    private static class MonthSummary {
+        final int count;
+        final double total;
+        final double largest;
+        final long largestKey;
+
+        MonthSummary(int count, double total, double largest, long largestKey) {
+            this.count = count;
+            this.total = total;
+            this.largest = largest;
+            this.largestKey = largestKey;
+        }
+    }
+
+    private final Path directory;
+    private final ExpenseJournal journal;
+    private final PersistenceWriter persistence;
+    private String extension = ".csv";
+
+    private final TreeMap<YearMonth, MonthSummary> manifest = new TreeMap<>();
+    private final LinkedHashMap<YearMonth, List<Expense>> loaded = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Long> keys = new HashSet<>();
+    // Months changed since their segment was last written; never evicted
+    private final Map<YearMonth, Integer> dirty = new HashMap<>();
+    // Rollups cover every month whose rows have been read once
+    private final ExpenseRollups rollups = new ExpenseRollups();
+    private final Set<YearMonth> covered = new HashSet<>();
+    // Whether the cube on disk matches the manifest
+    private boolean cubeSaved;
+    // Bookkeeping from compactions finished on the journal thread, applied on the owning thread
+    private final Queue<Runnable> compacted = new ConcurrentLinkedQueue<>();
+    // Built by the first search, then kept current
+    private SearchIndex searchIndex;
+    // Built by the first merchant report, then kept current
+    private MerchantSketch merchants;
+    // Built when budgets are first set, then kept current
+    private BudgetMonitor budgets;
+
+    public PartitionedExpenseRepository(String directoryPath, ExpenseJournal journal, PersistenceWriter persistence) {
+        this.directory = Paths.get(directoryPath);
+        this.journal = journal;
+        this.persistence = persistence;
+    }
+
+    @Override
+    public ExpenseLoader.Result load() throws IOException {
+        long start = System.nanoTime();
+        long generation = readManifest();
+        if (generation > 0 && rollups.read(directory.resolve(CUBE)) == generation) {
+            covered.addAll(manifest.keySet());
+            cubeSaved = true;
+        }
+
+        List<String> records = new ArrayList<>();
+        journal.open(generation, records::add);
+        foldRecords(records);
+
+        List<Expense> current = pageIn(YearMonth.now());
+        // This week may have started last month
+        segment(YearMonth.now().minusMonths(1));
+        long bytes = Files.exists(segmentFile(YearMonth.now())) ? Files.size(segmentFile(YearMonth.now())) : 0;
+        return new ExpenseLoader.Result(current, null, bytes, System.nanoTime() - start);
+    }
+
+    @Override
+    public List<Expense> findByMonth(YearMonth month) {
+        List<Expense> result = new ArrayList<>();
+        for (Expense expense : pageIn(month)) {
+            result.add(copy(expense));
+        }
+        evict(month);
+        return result;
+    }
+
+    @Override
+    public List<Expense> findAll() {
+        return scan(manifest.descendingKeySet(), expense -> true);
+    }
+
+    @Override
+    public Iterable<Expense> snapshotRows() {
+        // Loaded months may change, so they are copied now; the rest are read from their segments when reached
+        List<Supplier<List<Expense>>> months = new ArrayList<>();
+        for (YearMonth month : manifest.descendingKeySet()) {
+            List<Expense> expenses = loaded.get(month);
+            if (expenses != null) {
+                List<Expense> copied = new ArrayList<>(expenses.size());
+                for (Expense expense : expenses) {
+                    copied.add(copy(expense));
+                }
+                months.add(() -> copied);
+            } else {
+                months.add(() -> {
+                    try {
+                        return replaySegment(month);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        }
+        return () -> months.stream().flatMap(month -> month.get().stream()).iterator();
+    }
+
+    @Override
+    public List<Expense> findBetween(LocalDate from, LocalDate to) {
+        if (!from.isBefore(to)) return new ArrayList<>();
+        NavigableSet<YearMonth> months = manifest.navigableKeySet()
+            .subSet(YearMonth.from(from), true, YearMonth.from(to.minusDays(1)), true);
+        long start = from.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long end = to.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return scan(months.descendingSet(),
+            expense -> expense.getTimestamp() >= start && expense.getTimestamp() < end);
+    }
+
+    @Override
+    public List<Expense> findByCategory(String category) {
+        int id = CategoryRegistry.shared().find(category);
+        return scan(manifest.descendingKeySet(), expense -> expense.getCategoryId() == id);
+    }
+
+    @Override
+    public List<Expense> search(String text) {
+        return findByKeys(searchIndex().search(text));
+    }
+
+    @Override
+    public SearchIndex searchIndex() {
+        if (searchIndex == null) {
+            // Loaded months are copied now; the rest are read from their segments by the first search
+            List<Expense> cached = new ArrayList<>();
+            List<YearMonth> unread = new ArrayList<>();
+            for (YearMonth month : manifest.keySet()) {
+                List<Expense> expenses = loaded.get(month);
+                if (expenses != null) {
+                    cached.addAll(expenses);
+                } else {
+                    unread.add(month);
+                }
+            }
+            Iterable<Expense> rows = () -> Stream.concat(cached.stream(),
+                unread.stream().flatMap(month -> readSegmentQuietly(month).stream())).iterator();
+            searchIndex = new SearchIndex(rows);
+        }
+        return searchIndex;
+    }
+
+    @Override
+    public List<Expense> findByKeys(long[] keys) {
+        Set<Long> wanted = new HashSet<>();
+        TreeSet<YearMonth> months = new TreeSet<>();
+        for (long key : keys) {
+            wanted.add(key);
+            months.add(monthOf(key));
+        }
+        Map<Long, Expense> found = new HashMap<>();
+        for (Expense expense : scan(months, expense -> wanted.contains(expense.getTimestamp()))) {
+            found.put(expense.getTimestamp(), expense);
+        }
+        List<Expense> result = new ArrayList<>(found.size());
+        for (long key : keys) {
+            Expense expense = found.get(key);
+            if (expense != null) result.add(expense);
+        }
+        return result;
+    }
+
+    /** Matching expenses of {@code months}, reading segments that aren't loaded without caching them. */
+    private List<Expense> scan(Iterable<YearMonth> months, Predicate<Expense> predicate) {
+        List<Expense> result = new ArrayList<>();
+        for (YearMonth month : months) {
+            boolean cached = loaded.containsKey(month);
+            for (Expense expense : segment(month)) {
+                if (predicate.test(expense)) {
+                    result.add(cached ? copy(expense) : expense);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Expense findLargest() {
+        MonthSummary largest = null;
+        for (Map.Entry<YearMonth, MonthSummary> month : manifest.entrySet()) {
+            if (month.getValue().largestKey < 0) {
+                month.setValue(summarize(segment(month.getKey())));
+            }
+            MonthSummary summary = month.getValue();
+            if (largest == null || summary.largest >= largest.largest) largest = summary;
+        }
+        if (largest == null) return null;
+        List<Expense> found = findByKeys(new long[] {largest.largestKey});
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    @Override
+    public ExpenseRollups rollups() {
+        return rollups;
+    }
+
+    @Override
+    public ExpenseRollups allRollups() {
+        for (YearMonth month : manifest.keySet()) {
+            if (!covered.contains(month)) segment(month);
+        }
+        return rollups;
+    }
+
+    @Override
+    public int count() {
+        int count = 0;
+        for (MonthSummary summary : manifest.values()) {
+            count += summary.count;
+        }
+        return count;
+    }
+
+    @Override
+    public MerchantSketch merchants() {
+        if (merchants == null) {
+            merchants = new MerchantSketch(scan(manifest.keySet(), expense -> true));
+        }
+        return merchants;
+    }
+
+    @Override
+    public BudgetMonitor budgets() {
+        if (budgets == null) {
+            // Windows reach back up to a year, so those months must be in the rollups first
+            YearMonth earliest = YearMonth.now().minusMonths(BudgetMonitor.MAX_WINDOW_DAYS / 28);
+            for (YearMonth month : manifest.keySet()) {
+                if (!month.isBefore(earliest) && !covered.contains(month)) segment(month);
+            }
+            budgets = new BudgetMonitor(rollups);
+        }
+        return budgets;
+    }
+
+    /** Total of every month, straight from the manifest. */
+    public double total() {
+        double total = 0;
+        for (MonthSummary summary : manifest.values()) {
+            total += summary.total;
+        }
+        return total;
+    }
+
+    @Override
+    public void add(Expense expense) {
+        List<Expense> expenses = pageIn(monthOf(expense.getTimestamp()));
+        while (keys.contains(expense.getTimestamp())) {
+            expense.setDate(new Date(expense.getTimestamp() + 1));
+        }
+        keys.add(expense.getTimestamp());
+        expenses.add(0, copy(expense));
+        rollups.add(expense);
+        if (searchIndex != null) searchIndex.add(expense);
+        if (merchants != null) merchants.add(expense);
+        if (budgets != null) budgets.add(expense);
+        changed(monthOf(expense.getTimestamp()));
+        persistence.record(ExpenseJournal.ADD, expense);
+    }
+
+    @Override
+    public void addAll(List<Expense> batch) {
+        Map<YearMonth, List<Expense>> byMonth = new LinkedHashMap<>();
+        for (Expense expense : batch) {
+            byMonth.computeIfAbsent(monthOf(expense.getTimestamp()), m -> new ArrayList<>()).add(expense);
+        }
+
+        for (Map.Entry<YearMonth, List<Expense>> month : byMonth.entrySet()) {
+            List<Expense> expenses = pageIn(month.getKey());
+            List<Expense> newestFirst = new ArrayList<>(month.getValue().size());
+            for (Expense expense : month.getValue()) {
+                while (keys.contains(expense.getTimestamp())) {
+                    expense.setDate(new Date(expense.getTimestamp() + 1));
+                }
+                keys.add(expense.getTimestamp());
+                newestFirst.add(copy(expense));
+                rollups.add(expense);
+                if (searchIndex != null) searchIndex.add(expense);
+                if (merchants != null) merchants.add(expense);
+                if (budgets != null) budgets.add(expense);
+            }
+            Collections.reverse(newestFirst);
+            expenses.addAll(0, newestFirst);
+            changed(month.getKey());
+        }
+        persistence.recordAll(ExpenseJournal.ADD, batch);
+    }
+
+    @Override
+    public void update(Expense expense) {
+        YearMonth month = monthOf(expense.getTimestamp());
+        List<Expense> expenses = pageIn(month);
+        int index = indexOf(expenses, expense.getTimestamp());
+        if (index >= 0) {
+            // Stored rows are replaced, never changed, so a pending compaction keeps its copy
+            rollups.remove(expenses.get(index));
+            if (merchants != null) merchants.remove(expenses.get(index));
+            if (budgets != null) budgets.remove(expenses.get(index));
+            expenses.set(index, copy(expense));
+            rollups.add(expense);
+            if (searchIndex != null) searchIndex.add(expense);
+            if (merchants != null) merchants.add(expense);
+            if (budgets != null) budgets.add(expense);
+        }
+        changed(month);
+        persistence.record(ExpenseJournal.EDIT, expense);
+    }
+
+    @Override
+    public void delete(Expense expense) {
+        YearMonth month = monthOf(expense.getTimestamp());
+        List<Expense> expenses = pageIn(month);
+        int index = indexOf(expenses, expense.getTimestamp());
+        if (index >= 0) {
+            Expense removed = expenses.remove(index);
+            rollups.remove(removed);
+            if (searchIndex != null) searchIndex.remove(expense.getTimestamp());
+            if (merchants != null) merchants.remove(removed);
+            if (budgets != null) budgets.remove(removed);
+        }
+        keys.remove(expense.getTimestamp());
+        changed(month);
+        persistence.record(ExpenseJournal.DELETE, expense);
+    }
+
+    @Override
+    public void clear() {
+        // Segments of months missing from the manifest are deleted by the next compaction
+        manifest.clear();
+        loaded.clear();
+        keys.clear();
+        dirty.clear();
+        rollups.clear();
+        if (searchIndex != null) searchIndex.clear();
+        if (merchants != null) merchants.clear();
+        if (budgets != null) budgets.clear();
+        persistence.record(ExpenseJournal.CLEAR, null);
+    }
+
+    @Override
+    public void compactIfNeeded() {
+        applyCompacted();
+        boolean complete = covered.containsAll(manifest.keySet());
+        // A cube completed by a report is worth saving even if the journal is still small
+        if (!journal.needsCompaction() && (cubeSaved || !complete)) return;
+
+        Map<YearMonth, List<Expense>> segments = new HashMap<>();
+        Map<YearMonth, Integer> versions = new HashMap<>(dirty);
+        for (YearMonth month : dirty.keySet()) {
+            segments.put(month, new ArrayList<>(loaded.getOrDefault(month, Collections.emptyList())));
+        }
+        Map<YearMonth, MonthSummary> manifestCopy = new TreeMap<>(manifest);
+        ExpenseRollups cube = complete ? rollups.copy() : null;
+
+        persistence.compact(generation -> {
+            for (Map.Entry<YearMonth, List<Expense>> segment : segments.entrySet()) {
+                if (segment.getValue().isEmpty()) continue;
+                ExpenseJournal.writeSnapshot(segment.getValue(), generation, segmentFile(segment.getKey()));
+            }
+            deleteStaleSegments(manifestCopy.keySet());
+            writeManifest(manifestCopy, generation);
+            // Written after the manifest, so a crash in between leaves a cube whose generation doesn't match
+            if (cube != null) cube.write(directory.resolve(CUBE), generation);
+            // Months not touched since the copy are now safe to evict
+            compacted.add(() -> {
+                versions.forEach(dirty::remove);
+                cubeSaved = cube != null;
+            });
+        });
+    }
+
+    /**
+     * Splits a single-file snapshot, plus any journal on top of it, into
+     * month segments. Usage: {@code java PartitionedExpenseRepository
+     * data/expenses.csv data/expenses.journal data/months [.csv|.bin]}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: java PartitionedExpenseRepository <snapshot> <journal> <directory> [.csv|.bin]");
+            System.exit(1);
+        }
+        ExpenseLoader.Result result = ExpenseJournal.readSnapshot(Paths.get(args[0]));
+        ExpenseJournal.Replay replay = new ExpenseJournal.Replay();
+        for (Expense expense : result.expenses) {
+            replay.base(expense);
+        }
+        ExpenseJournal journal = new ExpenseJournal(args[1]);
+        long generation = journal.open(ExpenseJournal.generationOf(result), replay::apply) + 1;
+        journal.close();
+
+        PartitionedExpenseRepository repository = new PartitionedExpenseRepository(args[2], null, null);
+        if (args.length > 3) repository.extension = args[3];
+        Files.createDirectories(repository.directory);
+
+        Map<YearMonth, List<Expense>> months = new TreeMap<>();
+        for (Expense expense : replay.result()) {
+            months.computeIfAbsent(monthOf(expense.getTimestamp()), m -> new ArrayList<>()).add(expense);
+        }
+        for (Map.Entry<YearMonth, List<Expense>> month : months.entrySet()) {
+            ExpenseJournal.writeSnapshot(month.getValue(), generation, repository.segmentFile(month.getKey()));
+            repository.manifest.put(month.getKey(), summarize(month.getValue()));
+        }
+        repository.writeManifest(repository.manifest, generation);
+        System.out.printf("Wrote %d months to %s%n", months.size(), repository.directory);
+    }
+
+    private static YearMonth monthOf(long timestamp) {
+        return YearMonth.from(Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()));
+    }
+
+    private static Expense copy(Expense expense) {
+        return new Expense(expense.getAmount(), expense.getCategory(), expense.getDescription(), expense.getTimestamp());
+    }
+
+    private static int indexOf(List<Expense> expenses, long timestamp) {
+        for (int i = 0; i < expenses.size(); i++) {
+            if (expenses.get(i).getTimestamp() == timestamp) return i;
+        }
+        return -1;
+    }
+
+    private static MonthSummary summarize(List<Expense> expenses) {
+        double total = 0;
+        Expense largest = null;
+        for (Expense expense : expenses) {
+            total += expense.getAmount();
+            if (largest == null || expense.getAmount() > largest.getAmount()
+                    || expense.getAmount() == largest.getAmount() && expense.getTimestamp() > largest.getTimestamp()) {
+                largest = expense;
+            }
+        }
+        return largest == null ? new MonthSummary(0, 0, 0, -1)
+            : new MonthSummary(expenses.size(), total, largest.getAmount(), largest.getTimestamp());
+    }
+
+    private void changed(YearMonth month) {
+        List<Expense> expenses = loaded.get(month);
+        if (expenses == null || expenses.isEmpty()) {
+            manifest.remove(month);
+        } else {
+            manifest.put(month, summarize(expenses));
+        }
+        dirty.merge(month, 1, Integer::sum);
+    }
+
+    /** Applies journal records left from the last session to the months they touch. */
+    private void foldRecords(List<String> records) throws IOException {
+        Map<YearMonth, List<String>> byMonth = new LinkedHashMap<>();
+        for (String record : records) {
+            if (record.charAt(0) == ExpenseJournal.CLEAR) {
+                manifest.clear();
+                byMonth.clear();
+                rollups.clear();
+                covered.clear();
+                continue;
+            }
+            long timestamp = ExpenseJournal.timestampOf(record);
+            if (timestamp >= 0) {
+                byMonth.computeIfAbsent(monthOf(timestamp), m -> new ArrayList<>()).add(record);
+            }
+        }
+
+        for (Map.Entry<YearMonth, List<String>> month : byMonth.entrySet()) {
+            ExpenseJournal.Replay replay = new ExpenseJournal.Replay();
+            for (Expense expense : readSegment(month.getKey())) {
+                replay.base(expense);
+            }
+            month.getValue().forEach(replay::apply);
+
+            List<Expense> expenses = replay.result();
+            loaded.put(month.getKey(), expenses);
+            // A saved cube has this month as it was before the records
+            if (covered.remove(month.getKey())) rollups.clearMonth(month.getKey());
+            cover(month.getKey(), expenses);
+            for (Expense expense : expenses) {
+                keys.add(expense.getTimestamp());
+            }
+            changed(month.getKey());
+        }
+    }
+
+    private List<Expense> pageIn(YearMonth month) {
+        List<Expense> expenses = loaded.get(month);
+        if (expenses != null) return expenses;
+
+        try {
+            expenses = readSegment(month);
+        } catch (IOException e) {
+            System.err.println("Error loading " + month + ": " + e.getMessage());
+            expenses = new ArrayList<>();
+        }
+        loaded.put(month, expenses);
+        cover(month, expenses);
+        for (Expense expense : expenses) {
+            keys.add(expense.getTimestamp());
+        }
+        return expenses;
+    }
+
+    /** The month's rows, loaded or read from its segment without caching them. */
+    private List<Expense> segment(YearMonth month) {
+        List<Expense> expenses = loaded.get(month);
+        if (expenses != null) return expenses;
+        try {
+            expenses = readSegment(month);
+        } catch (IOException e) {
+            System.err.println("Error loading " + month + ": " + e.getMessage());
+            return Collections.emptyList();
+        }
+        cover(month, expenses);
+        return expenses;
+    }
+
+    private void cover(YearMonth month, List<Expense> expenses) {
+        if (!covered.add(month)) return;
+        for (Expense expense : expenses) {
+            rollups.add(expense);
+        }
+    }
+
+    private void applyCompacted() {
+        Runnable done;
+        while ((done = compacted.poll()) != null) {
+            done.run();
+        }
+    }
+
+    private void evict(YearMonth keep) {
+        applyCompacted();
+        Iterator<Map.Entry<YearMonth, List<Expense>>> eldest = loaded.entrySet().iterator();
+        while (loaded.size() > MAX_LOADED_MONTHS && eldest.hasNext()) {
+            Map.Entry<YearMonth, List<Expense>> entry = eldest.next();
+            if (entry.getKey().equals(keep) || dirty.containsKey(entry.getKey())) continue;
+            for (Expense expense : entry.getValue()) {
+                keys.remove(expense.getTimestamp());
+            }
+            eldest.remove();
+        }
+    }
+
+    /** Reads a month's segment; months missing from the manifest are empty. */
+    private List<Expense> readSegment(YearMonth month) throws IOException {
+        if (!manifest.containsKey(month)) return new ArrayList<>();
+        return replaySegment(month);
+    }
+
+    /** Reads a segment's file without touching the manifest, so it can run on another thread. */
+    private List<Expense> replaySegment(YearMonth month) throws IOException {
+        ExpenseJournal.Replay replay = new ExpenseJournal.Replay();
+        for (Expense expense : ExpenseJournal.readSnapshot(segmentFile(month)).expenses) {
+            replay.base(expense);
+        }
+        return replay.result();
+    }
+
+    /** Reads a segment on the search thread, indexing nothing for it if it can't be read. */
+    private List<Expense> readSegmentQuietly(YearMonth month) {
+        try {
+            return replaySegment(month);
+        } catch (IOException e) {
+            System.err.println("Error indexing " + month + ": " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    private Path segmentFile(YearMonth month) {
+        return directory.resolve(month + extension);
+    }
+
+    private long readManifest() throws IOException {
+        long generation = 0;
+        Path file = directory.resolve(MANIFEST);
+        if (!Files.exists(file)) return generation;
+
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.startsWith(ExpenseJournal.GENERATION_PREFIX)) {
+                generation = ExpenseJournal.parseGeneration(line);
+            } else if (line.startsWith(FORMAT_PREFIX)) {
+                extension = line.substring(FORMAT_PREFIX.length()).trim();
+            } else {
+                String[] parts = line.split(",");
+                if (parts.length != 3 && parts.length != 5) continue;
+                try {
+                    manifest.put(YearMonth.parse(parts[0]), new MonthSummary(
+                        Integer.parseInt(parts[1]), Double.parseDouble(parts[2]),
+                        parts.length == 5 ? Double.parseDouble(parts[3]) : 0,
+                        parts.length == 5 ? Long.parseLong(parts[4]) : -1));
+                } catch (RuntimeException e) {
+                    // Skip malformed entry
+                }
+            }
+        }
+        return generation;
+    }
+
+    private void writeManifest(Map<YearMonth, MonthSummary> months, long generation) throws IOException {
+        Path file = directory.resolve(MANIFEST);
+        Path tmp = directory.resolve(MANIFEST + ".tmp");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))) {
+            writer.print(ExpenseJournal.GENERATION_PREFIX + generation + "\n");
+            writer.print(FORMAT_PREFIX + extension + "\n");
+            for (Map.Entry<YearMonth, MonthSummary> month : months.entrySet()) {
+                MonthSummary summary = month.getValue();
+                writer.printf(Locale.ROOT, "%s,%d,%.2f,%.2f,%d\n",
+                    month.getKey(), summary.count, summary.total, summary.largest, summary.largestKey);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void deleteStaleSegments(Set<YearMonth> live) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (!name.endsWith(extension)) continue;
+                try {
+                    YearMonth month = YearMonth.parse(name.substring(0, name.length() - extension.length()));
+                    if (!live.contains(month)) Files.delete(file);
+                } catch (RuntimeException e) {
+                    // Not a segment
+                }
+            }
+        }
+    }
+}
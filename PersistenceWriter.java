@@ -0,0 +1,221 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Background thread that owns all writes to the journal, the config file
+ * and the category list. Callers on the EDT only enqueue work; bursts of changes are
+ * coalesced into a single journal write and failures, compaction included,
+ * are passed to the error handler on this thread or the journal's, so a UI
+ * handler has to hop to the EDT.
+ */
+public class PersistenceWriter {
+
+    private static final long COALESCE_MS = 50;
+
+    private final ExpenseJournal journal;
+    private final File configFile;
+    private final File categoriesFile;
+    private final Consumer<String> errorHandler;
+    private final Thread thread;
+
+    // Pending work, guarded by this
+    private final List<Object> pending = new ArrayList<>();
+    private List<String> pendingConfig;
+    private List<String> pendingCategories;
+    private boolean writing;
+    private boolean flushing;
+    private boolean closed;
+
+    public PersistenceWriter(ExpenseJournal journal, String configPath, String categoriesPath,
+                             Consumer<String> errorHandler) {
+        this.journal = journal;
+        this.configFile = new File(configPath);
+        this.categoriesFile = new File(categoriesPath);
+        this.errorHandler = errorHandler;
+        thread = new Thread(this::run, "expense-persistence");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Queues a journal record; the expense is rendered now so later edits don't leak in. */
+    public synchronized void record(char type, Expense expense) {
+        pending.add(ExpenseJournal.formatRecord(type, expense));
+        notifyAll();
+    }
+
+    /** Queues one record per expense; they reach the journal in a single write. */
+    public synchronized void recordAll(char type, List<Expense> expenses) {
+        for (Expense expense : expenses) {
+            pending.add(ExpenseJournal.formatRecord(type, expense));
+        }
+        notifyAll();
+    }
+
+    /** Queues a compaction; {@code writer} must capture state taken after every record queued so far. */
+    public synchronized void compact(ExpenseJournal.SnapshotWriter writer) {
+        pending.add(writer);
+        notifyAll();
+    }
+
+    /** Queues a config write of the given lines; only the latest config is written. */
+    public synchronized void saveConfig(List<String> config) {
+        pendingConfig = new ArrayList<>(config);
+        notifyAll();
+    }
+
+    /** Queues a write of the user-defined categories; only the latest list is written. */
+    public synchronized void saveCategories(List<String> categories) {
+        pendingCategories = new ArrayList<>(categories);
+        notifyAll();
+    }
+
+    /** Blocks until everything queued so far is written and synced. */
+    public void flush() {
+        synchronized (this) {
+            flushing = true;
+            notifyAll();
+            try {
+                while (!pending.isEmpty() || pendingConfig != null || pendingCategories != null || writing) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                flushing = false;
+            }
+        }
+        journal.sync();
+    }
+
+    /** Flushes pending work and closes the journal; meant to run on exit. */
+    public void close() {
+        flush();
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+    }
+
+    private void run() {
+        while (true) {
+            List<Object> batch;
+            List<String> config;
+            List<String> categories;
+            synchronized (this) {
+                try {
+                    while (pending.isEmpty() && pendingConfig == null && pendingCategories == null && !closed) {
+                        wait();
+                    }
+                    // Give a burst of changes a moment to pile up into one write
+                    long deadline = System.currentTimeMillis() + COALESCE_MS;
+                    long remaining;
+                    while (!flushing && !closed && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                        wait(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed && pending.isEmpty() && pendingConfig == null && pendingCategories == null) return;
+
+                batch = new ArrayList<>(pending);
+                pending.clear();
+                config = pendingConfig;
+                pendingConfig = null;
+                categories = pendingCategories;
+                pendingCategories = null;
+                writing = true;
+            }
+
+            try {
+                write(batch, config, categories);
+            } finally {
+                synchronized (this) {
+                    writing = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    private void write(List<Object> batch, List<String> config, List<String> categories) {
+        StringBuilder records = new StringBuilder();
+        int count = 0;
+        for (Object item : batch) {
+            if (item instanceof String) {
+                records.append((String) item).append('\n');
+                count++;
+            } else {
+                // Compaction must see exactly the records queued before it
+                count = appendRecords(records, count);
+                try {
+                    journal.compact((ExpenseJournal.SnapshotWriter) item, this::reportError);
+                } catch (IOException e) {
+                    reportError("Error compacting journal: " + e.getMessage());
+                }
+            }
+        }
+        appendRecords(records, count);
+
+        if (config != null) {
+            writeConfig(config);
+        }
+        if (categories != null) {
+            writeCategories(categories);
+        }
+    }
+
+    private int appendRecords(StringBuilder records, int count) {
+        if (count == 0) return 0;
+        try {
+            journal.append(records.toString(), count);
+        } catch (IOException e) {
+            reportError("Error saving expenses: " + e.getMessage());
+        }
+        records.setLength(0);
+        return 0;
+    }
+
+    private void writeConfig(List<String> config) {
+        try {
+            configFile.getParentFile().mkdirs();
+
+            try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+                    new FileOutputStream(configFile), StandardCharsets.UTF_8))) {
+                for (String line : config) {
+                    writer.println(line);
+                }
+            }
+        } catch (IOException e) {
+            reportError("Error saving config: " + e.getMessage());
+        }
+    }
+
+    private void writeCategories(List<String> categories) {
+        try {
+            categoriesFile.getParentFile().mkdirs();
+
+            try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+                    new FileOutputStream(categoriesFile), StandardCharsets.UTF_8))) {
+                for (String category : categories) {
+                    writer.println(category);
+                }
+            }
+        } catch (IOException e) {
+            reportError("Error saving categories: " + e.getMessage());
+        }
+    }
+
+    private void reportError(String message) {
+        errorHandler.accept(message);
+    }
+}
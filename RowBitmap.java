@@ -0,0 +1,327 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non-negative row ids, in the style of a Roaring bitmap.
+ * Ids are grouped by their upper 16 bits; each group of up to 65536 ids is
+ * a sorted {@code char[]} while it holds at most 4096 of them and a 1024-word
+ * bitset once it holds more, so sparse and dense sets both stay small and
+ * {@link #and} and {@link #or} work a group at a time. Not thread-safe.
+ */
+public class RowBitmap {
+
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+
+    // Groups sorted by key; a container is a char[] of low bits or a long[] bitset
+    private int[] keys = new int[4];
+    private Object[] containers = new Object[4];
+    private int[] sizes = new int[4];
+    private int groups;
+
+    public void add(int id) {
+        int group = find(id >>> 16);
+        if (group < 0) {
+            group = -group - 1;
+            insertGroup(group, id >>> 16, new char[4], 0);
+        }
+        char low = (char) id;
+        Object container = containers[group];
+        if (container instanceof long[]) {
+            long[] words = (long[]) container;
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) == 0) {
+                words[low >>> 6] |= bit;
+                sizes[group]++;
+            }
+            return;
+        }
+        char[] values = (char[]) container;
+        int size = sizes[group];
+        int index = Arrays.binarySearch(values, 0, size, low);
+        if (index >= 0) return;
+        index = -index - 1;
+        if (size == ARRAY_MAX) {
+            long[] words = toWords(values, size);
+            words[low >>> 6] |= 1L << low;
+            containers[group] = words;
+        } else {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, size * 2));
+                containers[group] = values;
+            }
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = low;
+        }
+        sizes[group]++;
+    }
+
+    public void remove(int id) {
+        int group = find(id >>> 16);
+        if (group < 0) return;
+        char low = (char) id;
+        Object container = containers[group];
+        if (container instanceof long[]) {
+            long[] words = (long[]) container;
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) == 0) return;
+            words[low >>> 6] &= ~bit;
+            if (--sizes[group] == ARRAY_MAX) {
+                containers[group] = toValues(words, ARRAY_MAX);
+            }
+        } else {
+            char[] values = (char[]) container;
+            int size = sizes[group];
+            int index = Arrays.binarySearch(values, 0, size, low);
+            if (index < 0) return;
+            System.arraycopy(values, index + 1, values, index, size - index - 1);
+            sizes[group]--;
+        }
+        if (sizes[group] == 0) {
+            removeGroup(group);
+        }
+    }
+
+    public boolean contains(int id) {
+        int group = find(id >>> 16);
+        if (group < 0) return false;
+        char low = (char) id;
+        Object container = containers[group];
+        if (container instanceof long[]) {
+            return (((long[]) container)[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) container, 0, sizes[group], low) >= 0;
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        for (int group = 0; group < groups; group++) {
+            cardinality += sizes[group];
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return groups == 0;
+    }
+
+    /** Calls {@code action} with every id, in ascending order. */
+    public void forEach(IntConsumer action) {
+        for (int group = 0; group < groups; group++) {
+            int high = keys[group] << 16;
+            Object container = containers[group];
+            if (container instanceof long[]) {
+                long[] words = (long[]) container;
+                for (int word = 0; word < WORDS; word++) {
+                    for (long bits = words[word]; bits != 0; bits &= bits - 1) {
+                        action.accept(high | word << 6 | Long.numberOfTrailingZeros(bits));
+                    }
+                }
+            } else {
+                char[] values = (char[]) container;
+                for (int i = 0; i < sizes[group]; i++) {
+                    action.accept(high | values[i]);
+                }
+            }
+        }
+    }
+
+    // Set operations; both return a new bitmap and leave their inputs alone
+
+    public RowBitmap and(RowBitmap other) {
+        RowBitmap result = new RowBitmap();
+        for (int i = 0, j = 0; i < groups && j < other.groups; ) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.appendAnd(keys[i], containers[i], sizes[i], other.containers[j], other.sizes[j]);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public RowBitmap or(RowBitmap other) {
+        RowBitmap result = new RowBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < groups || j < other.groups) {
+            if (j == other.groups || i < groups && keys[i] < other.keys[j]) {
+                result.appendCopy(keys[i], containers[i], sizes[i]);
+                i++;
+            } else if (i == groups || keys[i] > other.keys[j]) {
+                result.appendCopy(other.keys[j], other.containers[j], other.sizes[j]);
+                j++;
+            } else {
+                result.appendOr(keys[i], containers[i], sizes[i], other.containers[j], other.sizes[j]);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    private void appendAnd(int key, Object a, int aSize, Object b, int bSize) {
+        if (a instanceof long[] && b instanceof long[]) {
+            long[] x = (long[]) a;
+            long[] y = (long[]) b;
+            long[] words = new long[WORDS];
+            int size = 0;
+            for (int word = 0; word < WORDS; word++) {
+                words[word] = x[word] & y[word];
+                size += Long.bitCount(words[word]);
+            }
+            if (size > ARRAY_MAX) {
+                append(key, words, size);
+            } else if (size > 0) {
+                append(key, toValues(words, size), size);
+            }
+            return;
+        }
+        if (a instanceof long[]) {
+            appendAnd(key, b, bSize, a, aSize);
+            return;
+        }
+        char[] values = (char[]) a;
+        char[] kept = new char[aSize];
+        int size = 0;
+        if (b instanceof long[]) {
+            long[] words = (long[]) b;
+            for (int i = 0; i < aSize; i++) {
+                char low = values[i];
+                if ((words[low >>> 6] & (1L << low)) != 0) kept[size++] = low;
+            }
+        } else {
+            char[] others = (char[]) b;
+            for (int i = 0, j = 0; i < aSize && j < bSize; ) {
+                if (values[i] < others[j]) {
+                    i++;
+                } else if (values[i] > others[j]) {
+                    j++;
+                } else {
+                    kept[size++] = values[i];
+                    i++;
+                    j++;
+                }
+            }
+        }
+        if (size > 0) append(key, kept, size);
+    }
+
+    private void appendOr(int key, Object a, int aSize, Object b, int bSize) {
+        if (a instanceof char[] && b instanceof char[] && aSize + bSize <= ARRAY_MAX) {
+            char[] x = (char[]) a;
+            char[] y = (char[]) b;
+            char[] merged = new char[aSize + bSize];
+            int size = 0;
+            int i = 0;
+            int j = 0;
+            while (i < aSize || j < bSize) {
+                if (j == bSize || i < aSize && x[i] < y[j]) {
+                    merged[size++] = x[i++];
+                } else if (i == aSize || x[i] > y[j]) {
+                    merged[size++] = y[j++];
+                } else {
+                    merged[size++] = x[i++];
+                    j++;
+                }
+            }
+            append(key, merged, size);
+            return;
+        }
+        long[] words = a instanceof long[] ? ((long[]) a).clone() : toWords((char[]) a, aSize);
+        if (b instanceof long[]) {
+            long[] other = (long[]) b;
+            for (int word = 0; word < WORDS; word++) {
+                words[word] |= other[word];
+            }
+        } else {
+            char[] values = (char[]) b;
+            for (int i = 0; i < bSize; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+        }
+        int size = 0;
+        for (long word : words) {
+            size += Long.bitCount(word);
+        }
+        if (size > ARRAY_MAX) {
+            append(key, words, size);
+        } else {
+            append(key, toValues(words, size), size);
+        }
+    }
+
+    private void appendCopy(int key, Object container, int size) {
+        append(key, container instanceof long[] ? ((long[]) container).clone()
+            : Arrays.copyOf((char[]) container, size), size);
+    }
+
+    private void append(int key, Object container, int size) {
+        insertGroup(groups, key, container, size);
+    }
+
+    // Groups
+
+    private int find(int key) {
+        int low = 0;
+        int high = groups - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else if (keys[mid] > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void insertGroup(int group, int key, Object container, int size) {
+        if (groups == keys.length) {
+            keys = Arrays.copyOf(keys, groups * 2);
+            containers = Arrays.copyOf(containers, groups * 2);
+            sizes = Arrays.copyOf(sizes, groups * 2);
+        }
+        int tail = groups - group;
+        System.arraycopy(keys, group, keys, group + 1, tail);
+        System.arraycopy(containers, group, containers, group + 1, tail);
+        System.arraycopy(sizes, group, sizes, group + 1, tail);
+        keys[group] = key;
+        containers[group] = container;
+        sizes[group] = size;
+        groups++;
+    }
+
+    private void removeGroup(int group) {
+        int tail = groups - group - 1;
+        System.arraycopy(keys, group + 1, keys, group, tail);
+        System.arraycopy(containers, group + 1, containers, group, tail);
+        System.arraycopy(sizes, group + 1, sizes, group, tail);
+        containers[--groups] = null;
+    }
+
+    private static long[] toWords(char[] values, int size) {
+        long[] words = new long[WORDS];
+        for (int i = 0; i < size; i++) {
+            words[values[i] >>> 6] |= 1L << values[i];
+        }
+        return words;
+    }
+
+    private static char[] toValues(long[] words, int size) {
+        char[] values = new char[size];
+        int index = 0;
+        for (int word = 0; word < WORDS; word++) {
+            for (long bits = words[word]; bits != 0; bits &= bits - 1) {
+                values[index++] = (char) (word << 6 | Long.numberOfTrailingZeros(bits));
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,432 @@
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Trigram index over expense descriptions, keyed by the expense timestamp.
+ * A query of three or more characters only checks the rows listed under its
+ * rarest trigram; every candidate is confirmed against a lower-cased copy of
+ * its description, so results are exact substring matches. Shorter queries
+ * scan those copies directly.
+ *
+ * <p>Every row is also in a {@link RowBitmap} for its category and one for
+ * its month, so a category selection or a range of months is an OR of a
+ * few bitmaps, ANDed together and with the text hits. Categories are few,
+ * so text is matched against the {@link CategoryRegistry} labels once and
+ * the bitmaps of matching categories are added to the hits.
+ *
+ * <p>Removed and edited rows leave stale postings behind until they make up
+ * half the index, which is then rebuilt. Methods are thread-safe, so a
+ * search can run off the EDT while the repository keeps the index current,
+ * and a search on an interrupted thread stops with a
+ * {@link CancellationException}. Rows handed to the constructor are indexed
+ * by the first search, in chunks that let changes through in between.
+ */
+public class SearchIndex {
+
+    private static final int GRAM = 3;
+    private static final int MIN_REBUILD_DOCS = 1024;
+    private static final int CHUNK = 8192;
+
+    /** Growable list of document ids, ascending because ids only grow. */
+    private static class Postings {
+        int[] docs = new int[4];
+        int size;
+
+        void add(int doc) {
+            if (size > 0 && docs[size - 1] == doc) return;
+            if (size == docs.length) docs = Arrays.copyOf(docs, size * 2);
+            docs[size++] = doc;
+        }
+    }
+
+    private final Map<Long, Postings> postings = new HashMap<>();
+    private final KeyMap docsByKey = new KeyMap();
+    private final Map<Integer, RowBitmap> byCategory = new HashMap<>();
+    // Keyed by year * 12 + month - 1
+    private final TreeMap<Integer, RowBitmap> byMonth = new TreeMap<>();
+
+    // Per document; a removed document has length -1
+    private long[] keys = new long[16];
+    private int[] categoryIds = new int[16];
+    private int[] textOffsets = new int[16];
+    private int[] textLengths = new int[16];
+    private int docCount;
+    private int liveDocs;
+
+    private byte[] text = new byte[1024];
+    private int textSize;
+
+    // Month of the last timestamp seen
+    private long cachedMonthStart = 1;
+    private long cachedMonthEnd = 0;
+    private int cachedMonth;
+
+    // Rows not indexed yet, and the keys changed since they were handed over
+    private final Object fillLock = new Object();
+    private Iterator<Expense> pending;
+    private Set<Long> changedKeys;
+
+    public SearchIndex() {
+    }
+
+    /**
+     * Index of {@code rows}, which are read by the first search, possibly
+     * on another thread, so they must not change afterwards. Later calls to
+     * {@link #add} and {@link #remove} take precedence over them.
+     */
+    public SearchIndex(Iterable<Expense> rows) {
+        pending = rows.iterator();
+        changedKeys = new HashSet<>();
+    }
+
+    public synchronized void add(Expense expense) {
+        long key = expense.getTimestamp();
+        remove(key);
+        index(key, expense.getCategoryId(), expense.getDescription().toLowerCase(Locale.ROOT));
+    }
+
+    public synchronized void remove(long key) {
+        if (changedKeys != null) changedKeys.add(key);
+        int doc = docsByKey.remove(key);
+        if (doc < 0) return;
+        textLengths[doc] = -1;
+        unmark(byCategory, categoryIds[doc], doc);
+        unmark(byMonth, monthOf(key), doc);
+        liveDocs--;
+        if (docCount > MIN_REBUILD_DOCS && liveDocs * 2 < docCount) {
+            rebuild();
+        }
+    }
+
+    private void index(long key, int categoryId, String indexed) {
+        int doc = docCount++;
+        if (doc == keys.length) {
+            keys = Arrays.copyOf(keys, doc * 2);
+            categoryIds = Arrays.copyOf(categoryIds, doc * 2);
+            textOffsets = Arrays.copyOf(textOffsets, doc * 2);
+            textLengths = Arrays.copyOf(textLengths, doc * 2);
+        }
+        byte[] bytes = indexed.getBytes(StandardCharsets.UTF_8);
+        if (textSize + bytes.length > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, textSize + bytes.length));
+        }
+        System.arraycopy(bytes, 0, text, textSize, bytes.length);
+        keys[doc] = key;
+        categoryIds[doc] = categoryId;
+        textOffsets[doc] = textSize;
+        textLengths[doc] = bytes.length;
+        textSize += bytes.length;
+        docsByKey.put(key, doc);
+        byCategory.computeIfAbsent(categoryId, id -> new RowBitmap()).add(doc);
+        byMonth.computeIfAbsent(monthOf(key), month -> new RowBitmap()).add(doc);
+        liveDocs++;
+
+        for (int i = 0; i + GRAM <= indexed.length(); i++) {
+            postings.computeIfAbsent(gram(indexed, i), g -> new Postings()).add(doc);
+        }
+    }
+
+    public synchronized void clear() {
+        pending = null;
+        changedKeys = null;
+        reset();
+    }
+
+    private void reset() {
+        postings.clear();
+        docsByKey.clear();
+        byCategory.clear();
+        byMonth.clear();
+        docCount = 0;
+        liveDocs = 0;
+        textSize = 0;
+    }
+
+    public int size() {
+        indexPending();
+        synchronized (this) {
+            return liveDocs;
+        }
+    }
+
+    /**
+     * Timestamps of the expenses whose description or category contains
+     * {@code query}, ignoring case, newest first.
+     */
+    public long[] search(String query) {
+        return search(query, null, null, null);
+    }
+
+    /**
+     * Timestamps of the expenses matching {@code query}, which may be empty,
+     * that are filed under one of {@code categoryIds} and dated from
+     * {@code from} through {@code to}, newest first. A null category list or
+     * month leaves that side unrestricted.
+     */
+    public long[] search(String query, int[] categoryIds, YearMonth from, YearMonth to) {
+        indexPending();
+        synchronized (this) {
+            return find(query, scope(categoryIds, from, to));
+        }
+    }
+
+    /** Rows allowed by the category and month filters, or null if every row is. */
+    private RowBitmap scope(int[] categoryIds, YearMonth from, YearMonth to) {
+        RowBitmap scope = null;
+        if (categoryIds != null) {
+            scope = new RowBitmap();
+            for (int id : categoryIds) {
+                RowBitmap rows = byCategory.get(id);
+                if (rows != null) scope = scope.or(rows);
+            }
+        }
+        if (from != null || to != null) {
+            int first = from == null ? Integer.MIN_VALUE : from.getYear() * 12 + from.getMonthValue() - 1;
+            int last = to == null ? Integer.MAX_VALUE : to.getYear() * 12 + to.getMonthValue() - 1;
+            RowBitmap months = new RowBitmap();
+            if (first <= last) {
+                for (RowBitmap rows : byMonth.subMap(first, true, last, true).values()) {
+                    months = months.or(rows);
+                }
+            }
+            scope = scope == null ? months : scope.and(months);
+        }
+        return scope;
+    }
+
+    private long[] find(String query, RowBitmap scope) {
+        String needle = query.toLowerCase(Locale.ROOT);
+        RowBitmap hits = new RowBitmap();
+
+        if (needle.isEmpty()) {
+            if (scope == null) {
+                for (int doc = 0; doc < docCount; doc++) {
+                    if (textLengths[doc] >= 0) hits.add(doc);
+                }
+            } else {
+                hits = scope;
+            }
+            return keysOf(hits);
+        }
+
+        // Whole categories whose label contains the text
+        String[] labels = CategoryRegistry.shared().labels();
+        for (int id = 0; id < labels.length; id++) {
+            RowBitmap rows = byCategory.get(id);
+            if (rows != null && labels[id].toLowerCase(Locale.ROOT).contains(needle)) {
+                hits = hits.or(scope == null ? rows : rows.and(scope));
+            }
+        }
+
+        // Descriptions, checking only rows under the rarest trigram when there is one
+        byte[] pattern = needle.getBytes(StandardCharsets.UTF_8);
+        RowBitmap described = new RowBitmap();
+        if (needle.length() >= GRAM) {
+            Postings rarest = null;
+            for (int i = 0; i + GRAM <= needle.length(); i++) {
+                Postings candidates = postings.get(gram(needle, i));
+                if (candidates == null) {
+                    rarest = new Postings();
+                    break;
+                }
+                if (rarest == null || candidates.size < rarest.size) rarest = candidates;
+            }
+            for (int i = 0; i < rarest.size; i++) {
+                if (i % CHUNK == 0) checkInterrupted();
+                int doc = rarest.docs[i];
+                if ((scope == null || scope.contains(doc)) && matches(doc, pattern)) described.add(doc);
+            }
+        } else if (scope == null) {
+            for (int doc = 0; doc < docCount; doc++) {
+                if (doc % CHUNK == 0) checkInterrupted();
+                if (matches(doc, pattern)) described.add(doc);
+            }
+        } else {
+            checkInterrupted();
+            scope.forEach(doc -> {
+                if (matches(doc, pattern)) described.add(doc);
+            });
+        }
+        return keysOf(hits.or(described));
+    }
+
+    /** Keys of {@code docs}, newest first. */
+    private long[] keysOf(RowBitmap docs) {
+        long[] result = new long[docs.cardinality()];
+        int[] count = {0};
+        docs.forEach(doc -> result[count[0]++] = keys[doc]);
+        Arrays.sort(result);
+        for (int i = 0, j = result.length - 1; i < j; i++, j--) {
+            long swap = result[i];
+            result[i] = result[j];
+            result[j] = swap;
+        }
+        return result;
+    }
+
+    private static <K> void unmark(Map<K, RowBitmap> bitmaps, K key, int doc) {
+        RowBitmap rows = bitmaps.get(key);
+        if (rows == null) return;
+        rows.remove(doc);
+        if (rows.isEmpty()) bitmaps.remove(key);
+    }
+
+    private int monthOf(long millis) {
+        if (millis < cachedMonthStart || millis >= cachedMonthEnd) {
+            ZoneId zone = ZoneId.systemDefault();
+            LocalDate day = LocalDate.ofInstant(Instant.ofEpochMilli(millis), zone);
+            LocalDate first = day.withDayOfMonth(1);
+            cachedMonthStart = first.atStartOfDay(zone).toInstant().toEpochMilli();
+            cachedMonthEnd = first.plusMonths(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            cachedMonth = day.getYear() * 12 + day.getMonthValue() - 1;
+        }
+        return cachedMonth;
+    }
+
+    /** Indexes the rows given to the constructor, unless they have been changed since. */
+    private void indexPending() {
+        synchronized (fillLock) {
+            while (true) {
+                checkInterrupted();
+                synchronized (this) {
+                    if (pending == null) return;
+                    for (int i = 0; i < CHUNK && pending.hasNext(); i++) {
+                        Expense expense = pending.next();
+                        if (!changedKeys.contains(expense.getTimestamp())) {
+                            index(expense.getTimestamp(), expense.getCategoryId(),
+                                expense.getDescription().toLowerCase(Locale.ROOT));
+                        }
+                    }
+                    if (!pending.hasNext()) {
+                        pending = null;
+                        changedKeys = null;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Search cancelled");
+        }
+    }
+
+    private boolean matches(int doc, byte[] pattern) {
+        int length = textLengths[doc];
+        if (length < pattern.length) return false;
+        int offset = textOffsets[doc];
+        int last = offset + length - pattern.length;
+        outer:
+        for (int start = offset; start <= last; start++) {
+            for (int i = 0; i < pattern.length; i++) {
+                if (text[start + i] != pattern[i]) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /** Drops removed documents and their postings by re-adding the live ones. */
+    private void rebuild() {
+        long[] oldKeys = keys;
+        int[] oldCategories = categoryIds;
+        int[] oldOffsets = textOffsets;
+        int[] oldLengths = textLengths;
+        byte[] oldText = text;
+        int oldCount = docCount;
+
+        keys = new long[Math.max(16, liveDocs)];
+        categoryIds = new int[keys.length];
+        textOffsets = new int[keys.length];
+        textLengths = new int[keys.length];
+        text = new byte[1024];
+        reset();
+
+        for (int doc = 0; doc < oldCount; doc++) {
+            if (oldLengths[doc] < 0) continue;
+            index(oldKeys[doc], oldCategories[doc], new String(oldText, oldOffsets[doc], oldLengths[doc], StandardCharsets.UTF_8));
+        }
+    }
+
+    private static long gram(String text, int start) {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+
+    /** Open-addressing map from timestamp to document id, without boxing. */
+    private static class KeyMap {
+        private static final long EMPTY = Long.MIN_VALUE;
+
+        private long[] keys = newKeys(1024);
+        private int[] values = new int[1024];
+        private int size;
+
+        void put(long key, int value) {
+            if ((size + 1) * 2 > keys.length) grow();
+            int slot = slot(key, keys.length);
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & (keys.length - 1);
+            }
+            if (keys[slot] == EMPTY) size++;
+            keys[slot] = key;
+            values[slot] = value;
+        }
+
+        /** Removes {@code key} and returns its value, or -1. */
+        int remove(long key) {
+            int mask = keys.length - 1;
+            int slot = slot(key, keys.length);
+            while (keys[slot] != key) {
+                if (keys[slot] == EMPTY) return -1;
+                slot = (slot + 1) & mask;
+            }
+            int value = values[slot];
+            size--;
+
+            // Shift later entries of the same run back so lookups never hit a hole
+            int hole = slot;
+            for (int next = (hole + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+                int home = slot(keys[next], keys.length);
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    values[hole] = values[next];
+                    hole = next;
+                }
+            }
+            keys[hole] = EMPTY;
+            return value;
+        }
+
+        void clear() {
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = newKeys(oldKeys.length * 2);
+            values = new int[keys.length];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) put(oldKeys[i], oldValues[i]);
+            }
+        }
+
+        private static long[] newKeys(int capacity) {
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+
+        private static int slot(long key, int capacity) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash >>> 32) & (capacity - 1);
+        }
+    }
+}
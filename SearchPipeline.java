@@ -0,0 +1,122 @@
+import java.time.YearMonth;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+import javax.swing.SwingUtilities;
+
+/**
+ * Runs the searches typed into the search box, together with the category
+ * filter, against the {@link SearchIndex}. Keystrokes restart a short
+ * debounce timer, so only the text the user pauses on is searched; the
+ * query then runs on a background thread and its hits are handed to the
+ * EDT in one piece. A newer query cancels the one still running, and
+ * results that arrive after being superseded are dropped. All methods are
+ * called on the EDT.
+ */
+public class SearchPipeline {
+
+    /** Text, categories and month to search; a null category list or month means all of them. */
+    public static class Query {
+        public final String text;
+        public final int[] categoryIds;
+        public final YearMonth month;
+
+        public Query(String text, int[] categoryIds, YearMonth month) {
+            this.text = text;
+            this.categoryIds = categoryIds;
+            this.month = month;
+        }
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "expense-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final javax.swing.Timer debounce;
+    private final BiConsumer<Query, long[]> publisher;
+
+    private Query pendingQuery;
+    private SearchIndex pendingIndex;
+    private Future<?> running;
+    private long generation;
+
+    // Metrics
+    private long requested;
+    private long completed;
+    private long dropped;
+    private long totalNanos;
+    private long maxNanos;
+    private long lastNanos;
+
+    /**
+     * {@code publisher} receives each query that is still current with its
+     * hits, newest first, on the EDT; the hits are null if there was no index.
+     */
+    public SearchPipeline(int debounceMs, BiConsumer<Query, long[]> publisher) {
+        this.publisher = publisher;
+        this.debounce = new javax.swing.Timer(debounceMs, e -> start());
+        this.debounce.setRepeats(false);
+    }
+
+    /** Runs {@code query} against {@code index} once typing pauses; a null index leaves it to the EDT. */
+    public void request(Query query, SearchIndex index) {
+        requested++;
+        pendingQuery = query;
+        pendingIndex = index;
+        debounce.restart();
+    }
+
+    /** Abandons the pending and running query, for example when the box is cleared. */
+    public void cancel() {
+        debounce.stop();
+        generation++;
+        if (running != null) {
+            // Not published yet, whether it is still queued, running or on its way to the EDT
+            running.cancel(true);
+            dropped++;
+            running = null;
+        }
+    }
+
+    private void start() {
+        cancel();
+        Query query = pendingQuery;
+        SearchIndex index = pendingIndex;
+        long started = System.nanoTime();
+        if (index == null) {
+            publish(query, null, started);
+            return;
+        }
+
+        long current = generation;
+        running = executor.submit(() -> {
+            try {
+                long[] keys = index.search(query.text, query.categoryIds, query.month, query.month);
+                SwingUtilities.invokeLater(() -> {
+                    if (current != generation) return;
+                    running = null;
+                    publish(query, keys, started);
+                });
+            } catch (CancellationException e) {
+                // Superseded by a newer query
+            } catch (RuntimeException e) {
+                System.err.println("Error searching for \"" + query.text + "\": " + e);
+            }
+        });
+    }
+
+    private void publish(Query query, long[] keys, long started) {
+        publisher.accept(query, keys);
+        lastNanos = System.nanoTime() - started;
+        maxNanos = Math.max(maxNanos, lastNanos);
+        totalNanos += lastNanos;
+        completed++;
+    }
+
+    /** Latency from the end of the debounce to the table update, and how many queries never showed. */
+    public String metrics() {
+        return String.format("%d searches, last %.1f ms, mean %.1f ms, max %.1f ms, %d dropped, %d keystrokes merged",
+            completed, lastNanos / 1e6, completed == 0 ? 0 : totalNanos / 1e6 / completed, maxNanos / 1e6,
+            dropped, requested - completed - dropped);
+    }
+}
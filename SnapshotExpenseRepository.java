@@ -0,0 +1,283 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * Keeps the whole history in memory in an {@link ExpenseStore}, backed by a
+ * single snapshot file plus the journal. Queries scan the primitive columns
+ * and only build Expense objects for the rows they return; text search
+ * goes through a {@link SearchIndex} filled on first use. Compaction
+ * rewrites the full snapshot in the background from a copy of the store.
+ */
+public class SnapshotExpenseRepository implements ExpenseRepository {
+
+    private final Path snapshotFile;
+    private final ExpenseJournal journal;
+    private final PersistenceWriter persistence;
+    // Sorted by timestamp, oldest first; swapped out whole by clearRestorable
+    private ExpenseStore store = new ExpenseStore();
+    private final ExpenseRollups rollups = new ExpenseRollups();
+    // Built by the first search, then kept current
+    private SearchIndex searchIndex;
+    // Built by the first merchant report, then kept current
+    private MerchantSketch merchants;
+    // Built when budgets are first set, then kept current
+    private BudgetMonitor budgets;
+
+    public SnapshotExpenseRepository(String snapshotPath, ExpenseJournal journal, PersistenceWriter persistence) {
+        this.snapshotFile = Paths.get(snapshotPath);
+        this.journal = journal;
+        this.persistence = persistence;
+    }
+
+    @Override
+    public ExpenseLoader.Result load() throws IOException {
+        ExpenseLoader.Result result = ExpenseJournal.readSnapshot(snapshotFile);
+        ExpenseJournal.Replay replay = new ExpenseJournal.Replay();
+        for (Expense expense : result.expenses) {
+            replay.base(expense);
+        }
+        journal.open(ExpenseJournal.generationOf(result), replay::apply);
+
+        store.addAll(replay.result());
+        store.trimToSize();
+        for (int row = 0; row < store.size(); row++) {
+            rollups.add(store.millis(row), store.cents(row), store.categoryId(row));
+        }
+        return result;
+    }
+
+    @Override
+    public List<Expense> findByMonth(YearMonth month) {
+        return findBetween(month.atDay(1), month.plusMonths(1).atDay(1));
+    }
+
+    @Override
+    public List<Expense> findAll() {
+        return new ArrayList<>(store.asList());
+    }
+
+    @Override
+    public Iterable<Expense> snapshotRows() {
+        // Copying the columns is a few array copies; rows are built one at a time as they are read
+        return store.copy().asList();
+    }
+
+    @Override
+    public List<Expense> findBetween(LocalDate from, LocalDate to) {
+        int first = store.lowerBound(millis(from));
+        int end = store.lowerBound(millis(to));
+        List<Expense> result = new ArrayList<>(Math.max(0, end - first));
+        for (int row = end - 1; row >= first; row--) {
+            result.add(store.toExpense(row));
+        }
+        return result;
+    }
+
+    @Override
+    public List<Expense> findByCategory(String category) {
+        int id = CategoryRegistry.shared().find(category);
+        return filter(row -> store.categoryId(row) == id);
+    }
+
+    @Override
+    public List<Expense> search(String text) {
+        return findByKeys(searchIndex().search(text));
+    }
+
+    @Override
+    public SearchIndex searchIndex() {
+        if (searchIndex == null) {
+            // Indexed from a copy by the first search, which may run off the EDT
+            searchIndex = new SearchIndex(store.copy().asList());
+        }
+        return searchIndex;
+    }
+
+    @Override
+    public List<Expense> findByKeys(long[] keys) {
+        List<Expense> result = new ArrayList<>(keys.length);
+        for (long key : keys) {
+            int row = store.indexOf(key);
+            if (row >= 0) {
+                result.add(store.toExpense(row));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public double totalBetween(LocalDate from, LocalDate to) {
+        long cents = 0;
+        for (int row = store.lowerBound(millis(from)), end = store.lowerBound(millis(to)); row < end; row++) {
+            cents += store.cents(row);
+        }
+        return cents / 100.0;
+    }
+
+    @Override
+    public Expense findLargest() {
+        int largest = -1;
+        for (int row = 0; row < store.size(); row++) {
+            if (largest < 0 || store.cents(row) >= store.cents(largest)) largest = row;
+        }
+        return largest < 0 ? null : store.toExpense(largest);
+    }
+
+    @Override
+    public ExpenseStatistics statistics() {
+        // Straight off the columns, without building an Expense per row
+        return ExpenseStatistics.compute(store.size(), store::cents, store::categoryId);
+    }
+
+    @Override
+    public ExpenseRollups rollups() {
+        return rollups;
+    }
+
+    @Override
+    public int count() {
+        return store.size();
+    }
+
+    @Override
+    public MerchantSketch merchants() {
+        if (merchants == null) {
+            merchants = new MerchantSketch(store.asList());
+        }
+        return merchants;
+    }
+
+    @Override
+    public BudgetMonitor budgets() {
+        if (budgets == null) {
+            budgets = new BudgetMonitor(rollups);
+        }
+        return budgets;
+    }
+
+    @Override
+    public void add(Expense expense) {
+        while (store.indexOf(expense.getTimestamp()) >= 0) {
+            expense.setDate(new Date(expense.getTimestamp() + 1));
+        }
+        store.add(expense);
+        rollups.add(expense);
+        if (searchIndex != null) searchIndex.add(expense);
+        if (merchants != null) merchants.add(expense);
+        if (budgets != null) budgets.add(expense);
+        persistence.record(ExpenseJournal.ADD, expense);
+    }
+
+    @Override
+    public void addAll(List<Expense> batch) {
+        // The batch is oldest first, so it only has to clear the stored keys and its previous row
+        long previous = Long.MIN_VALUE;
+        for (Expense expense : batch) {
+            long timestamp = Math.max(expense.getTimestamp(), previous + 1);
+            while (store.indexOf(timestamp) >= 0) {
+                timestamp++;
+            }
+            if (timestamp != expense.getTimestamp()) {
+                expense.setDate(new Date(timestamp));
+            }
+            previous = timestamp;
+            rollups.add(expense);
+            if (searchIndex != null) searchIndex.add(expense);
+            if (merchants != null) merchants.add(expense);
+            if (budgets != null) budgets.add(expense);
+        }
+        store.addAll(batch);
+        persistence.recordAll(ExpenseJournal.ADD, batch);
+    }
+
+    @Override
+    public void update(Expense expense) {
+        int row = store.indexOf(expense.getTimestamp());
+        if (row >= 0) {
+            rollups.remove(store.millis(row), store.cents(row), store.categoryId(row));
+            if (merchants != null) merchants.remove(store.description(row), store.cents(row));
+            if (budgets != null) budgets.remove(store.millis(row), store.cents(row), store.categoryId(row));
+            store.set(row, expense);
+            rollups.add(expense);
+            if (searchIndex != null) searchIndex.add(expense);
+            if (merchants != null) merchants.add(expense);
+            if (budgets != null) budgets.add(expense);
+        }
+        persistence.record(ExpenseJournal.EDIT, expense);
+    }
+
+    @Override
+    public void delete(Expense expense) {
+        int row = store.indexOf(expense.getTimestamp());
+        if (row >= 0) {
+            rollups.remove(store.millis(row), store.cents(row), store.categoryId(row));
+            if (merchants != null) merchants.remove(store.description(row), store.cents(row));
+            if (budgets != null) budgets.remove(store.millis(row), store.cents(row), store.categoryId(row));
+            store.remove(row);
+            if (searchIndex != null) searchIndex.remove(expense.getTimestamp());
+        }
+        persistence.record(ExpenseJournal.DELETE, expense);
+    }
+
+    @Override
+    public void clear() {
+        store.clear();
+        rollups.clear();
+        if (searchIndex != null) searchIndex.clear();
+        if (merchants != null) merchants.clear();
+        if (budgets != null) budgets.clear();
+        persistence.record(ExpenseJournal.CLEAR, null);
+    }
+
+    @Override
+    public Runnable clearRestorable() {
+        // The columns are set aside as they are and the totals copied, which is per day, not per row
+        ExpenseStore cleared = store;
+        ExpenseRollups clearedRollups = rollups.copy();
+        store = new ExpenseStore();
+        clear();
+        return () -> {
+            store = cleared;
+            rollups.restore(clearedRollups);
+            // Rebuilt on next use
+            searchIndex = null;
+            merchants = null;
+            if (budgets != null) budgets.setBudgets(budgets.budgets());
+            // The journal ends in a CLEAR, so the rows go back to disk as one
+            // snapshot, written on the journal thread from a copy of the columns
+            compact();
+        };
+    }
+
+    @Override
+    public void compactIfNeeded() {
+        if (journal.needsCompaction()) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        ExpenseStore snapshot = store.copy();
+        persistence.compact(generation -> ExpenseJournal.writeSnapshot(snapshot.asList(), generation, snapshotFile));
+    }
+
+    private List<Expense> filter(IntPredicate predicate) {
+        List<Expense> result = new ArrayList<>();
+        for (int row = store.size() - 1; row >= 0; row--) {
+            if (predicate.test(row)) {
+                result.add(store.toExpense(row));
+            }
+        }
+        return result;
+    }
+
+    private static long millis(LocalDate date) {
+        return date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,276 @@
+import java.awt.*;
+import java.awt.event.*;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import javax.swing.JPanel;
+
+/**
+ * Line chart of spending per day, or cumulative spending, over the daily
+ * totals of the rollups cube. The wheel zooms around the pointer, dragging
+ * pans and a double-click shows the whole range again.
+ *
+ * <p>However long the history, only about one point per pixel is drawn: the
+ * series is downsampled with Largest-Triangle-Three-Buckets, which keeps
+ * the peaks a plain average would flatten. Zoom goes in fixed steps, and
+ * each step's downsampled series is computed once for the whole range and
+ * cached, so panning only looks up the slice in view.
+ */
+public class SpendingChart extends JPanel {
+
+    private static final double ZOOM_STEP = 1.5;
+    private static final int MIN_VISIBLE_DAYS = 14;
+    private static final int LEFT = 70;
+    private static final int RIGHT = 20;
+    private static final int TOP = 20;
+    private static final int BOTTOM = 36;
+    private static final Color LINE = new Color(37, 99, 235);
+    private static final Color GRID = new Color(229, 231, 235);
+    private static final Color TEXT = new Color(107, 114, 128);
+
+    private final LocalDate firstDay;
+    private final double[] daily;
+    private final double[] cumulative;
+    private boolean showCumulative;
+
+    // View: zoom step (0 shows everything) and the first day in view
+    private int zoom;
+    private double offset;
+    private int dragX = -1;
+    private double dragOffset;
+
+    // Downsampled day indexes per zoom step, for the current plot width and series
+    private final Map<Integer, int[]> samples = new HashMap<>();
+    private int sampledWidth = -1;
+
+    /** Charts {@code daily}, the total of each day from {@code firstDay} on. */
+    public SpendingChart(LocalDate firstDay, double[] daily) {
+        this.firstDay = firstDay;
+        this.daily = daily;
+        this.cumulative = new double[daily.length];
+        double total = 0;
+        for (int day = 0; day < daily.length; day++) {
+            total += daily[day];
+            cumulative[day] = total;
+        }
+        setBackground(Color.WHITE);
+        setPreferredSize(new Dimension(820, 420));
+
+        addMouseWheelListener(e -> zoom(e.getWheelRotation() < 0 ? 1 : -1, e.getX()));
+        MouseAdapter drag = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragX = e.getX();
+                dragOffset = offset;
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (dragX < 0) return;
+                offset = clampOffset(dragOffset - (e.getX() - dragX) * visibleDays() / plotWidth());
+                repaint();
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                dragX = -1;
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    zoom = 0;
+                    offset = 0;
+                    repaint();
+                }
+            }
+        };
+        addMouseListener(drag);
+        addMouseMotionListener(drag);
+    }
+
+    public void setCumulative(boolean cumulative) {
+        showCumulative = cumulative;
+        samples.clear();
+        repaint();
+    }
+
+    private void zoom(int steps, int x) {
+        int next = Math.max(0, Math.min(maxZoom(), zoom + steps));
+        if (next == zoom) return;
+        // Keep the day under the pointer where it is
+        double fraction = Math.max(0, Math.min(1, (x - LEFT) / (double) plotWidth()));
+        double anchor = offset + fraction * visibleDays();
+        zoom = next;
+        offset = clampOffset(anchor - fraction * visibleDays());
+        repaint();
+    }
+
+    private int maxZoom() {
+        return (int) Math.max(0, Math.floor(Math.log(daily.length / (double) MIN_VISIBLE_DAYS) / Math.log(ZOOM_STEP)));
+    }
+
+    private double visibleDays() {
+        return Math.max(1, daily.length / Math.pow(ZOOM_STEP, zoom));
+    }
+
+    private double clampOffset(double value) {
+        return Math.max(0, Math.min(daily.length - visibleDays(), value));
+    }
+
+    private int plotWidth() {
+        return Math.max(1, getWidth() - LEFT - RIGHT);
+    }
+
+    @Override
+    protected void paintComponent(Graphics graphics) {
+        super.paintComponent(graphics);
+        Graphics2D g = (Graphics2D) graphics;
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setFont(new Font("Segoe UI", Font.PLAIN, 11));
+        int width = plotWidth();
+        int height = Math.max(1, getHeight() - TOP - BOTTOM);
+        if (daily.length == 0) {
+            g.setColor(TEXT);
+            g.drawString("No expenses to chart", LEFT, TOP + height / 2);
+            return;
+        }
+
+        double[] series = showCumulative ? cumulative : daily;
+        int[] points = samples(width);
+        double visible = visibleDays();
+        // One point past each edge, so the line runs out of the view instead of stopping short
+        int first = Math.max(0, lowerBound(points, (int) Math.floor(offset)) - 1);
+        int last = Math.min(points.length, lowerBound(points, (int) Math.ceil(offset + visible)) + 1);
+
+        double max = 0;
+        for (int i = first; i < last; i++) {
+            max = Math.max(max, series[points[i]]);
+        }
+        double scale = niceCeiling(max);
+
+        // Grid and labels
+        g.setColor(GRID);
+        for (int line = 0; line <= 4; line++) {
+            int y = TOP + height - line * height / 4;
+            g.drawLine(LEFT, y, LEFT + width, y);
+            g.setColor(TEXT);
+            String label = String.format("$%,.0f", scale * line / 4);
+            g.drawString(label, LEFT - 8 - g.getFontMetrics().stringWidth(label), y + 4);
+            g.setColor(GRID);
+        }
+        g.setColor(TEXT);
+        for (int tick = 0; tick <= 4; tick++) {
+            int x = LEFT + tick * width / 4;
+            String label = firstDay.plusDays((long) (offset + visible * tick / 4)).toString();
+            int labelWidth = g.getFontMetrics().stringWidth(label);
+            g.drawString(label, Math.max(0, Math.min(getWidth() - labelWidth, x - labelWidth / 2)), TOP + height + 20);
+        }
+
+        // Series
+        int count = last - first;
+        int[] xs = new int[count];
+        int[] ys = new int[count];
+        for (int i = 0; i < count; i++) {
+            int day = points[first + i];
+            xs[i] = LEFT + (int) Math.round((day - offset) * width / visible);
+            ys[i] = TOP + height - (int) Math.round(series[day] / scale * height);
+        }
+        Shape clip = g.getClip();
+        g.clipRect(LEFT, TOP - 1, width + 1, height + 2);
+        g.setColor(LINE);
+        g.setStroke(new BasicStroke(1.5f));
+        g.drawPolyline(xs, ys, count);
+        g.setClip(clip);
+    }
+
+    /** Day indexes kept at the current zoom step, computed once per step and width. */
+    private int[] samples(int width) {
+        if (width != sampledWidth) {
+            samples.clear();
+            sampledWidth = width;
+        }
+        return samples.computeIfAbsent(zoom, step -> {
+            // About one point per pixel of the zoomed-in view, across the whole range
+            int threshold = (int) Math.ceil(daily.length * width / visibleDays());
+            return largestTriangleThreeBuckets(showCumulative ? cumulative : daily, threshold);
+        });
+    }
+
+    /** Position in {@code points} of the first day at or after {@code day}. */
+    private static int lowerBound(int[] points, int day) {
+        int low = 0;
+        int high = points.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (points[mid] < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Indexes of about {@code threshold} points of {@code values} chosen by
+     * Largest-Triangle-Three-Buckets: the first and last are kept, and each
+     * bucket in between keeps the point forming the largest triangle with
+     * the point kept before it and the average of the next bucket.
+     */
+    static int[] largestTriangleThreeBuckets(double[] values, int threshold) {
+        int size = values.length;
+        if (threshold >= size || threshold < 3) {
+            int[] all = new int[size];
+            for (int i = 0; i < size; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        int[] kept = new int[threshold];
+        double every = (size - 2) / (double) (threshold - 2);
+        int previous = 0;
+        kept[0] = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int start = (int) Math.floor(bucket * every) + 1;
+            int end = (int) Math.floor((bucket + 1) * every) + 1;
+            int nextEnd = Math.min(size, (int) Math.floor((bucket + 2) * every) + 1);
+
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = end; i < nextEnd; i++) {
+                averageX += i;
+                averageY += values[i];
+            }
+            int nextCount = nextEnd - end;
+            averageX /= nextCount;
+            averageY /= nextCount;
+
+            double largest = -1;
+            int chosen = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((previous - averageX) * (values[i] - values[previous])
+                    - (previous - i) * (averageY - values[previous]));
+                if (area > largest) {
+                    largest = area;
+                    chosen = i;
+                }
+            }
+            kept[bucket + 1] = chosen;
+            previous = chosen;
+        }
+        kept[threshold - 1] = size - 1;
+        return kept;
+    }
+
+    /** Smallest 1, 2 or 5 times a power of ten at or above {@code value}, so the axis reads well. */
+    private static double niceCeiling(double value) {
+        if (value <= 0) return 1;
+        double magnitude = Math.pow(10, Math.floor(Math.log10(value)));
+        for (double step : new double[] {1, 2, 5, 10}) {
+            if (step * magnitude >= value) return step * magnitude;
+        }
+        return 10 * magnitude;
+    }
+}
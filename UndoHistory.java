@@ -0,0 +1,117 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Undo and redo for changes made through the tracker, kept as a log of
+ * inverse operations rather than copies of the ledger. Each step holds
+ * only what it needs to reverse itself: a copy of the expense added or
+ * deleted, or an edit's values before and after. History is unlimited
+ * at a constant cost per step. A clear holds the repository's restore
+ * action, which for the in-memory repository is the cleared columns
+ * themselves, so undoing it swaps them back without rebuilding the store
+ * and queues a single snapshot write in place of the journaled clear.
+ *
+ * <p>Undo and redo go through the repository like any other change, so
+ * the journal, rollups and everything built on them stay current. Steps
+ * find their expense by timestamp, so a change made around the history
+ * must {@link #forget} it.
+ */
+public class UndoHistory {
+
+    /** A change that can be reversed and made again. */
+    private static class Step {
+        final String name;
+        final Runnable undo;
+        final Runnable redo;
+
+        Step(String name, Runnable undo, Runnable redo) {
+            this.name = name;
+            this.undo = undo;
+            this.redo = redo;
+        }
+    }
+
+    private final ExpenseRepository repository;
+    private final Deque<Step> undoSteps = new ArrayDeque<>();
+    private final Deque<Step> redoSteps = new ArrayDeque<>();
+
+    public UndoHistory(ExpenseRepository repository) {
+        this.repository = repository;
+    }
+
+    public void add(Expense expense) {
+        repository.add(expense);
+        // Copied after adding, since the repository may have moved its timestamp
+        Expense added = copy(expense);
+        record(new Step("Add", () -> repository.delete(added), () -> repository.add(copy(added))));
+    }
+
+    public void delete(Expense expense) {
+        Expense deleted = copy(expense);
+        repository.delete(expense);
+        record(new Step("Delete", () -> repository.add(copy(deleted)), () -> repository.delete(deleted)));
+    }
+
+    /** Changes {@code expense} to the given values and saves it. */
+    public void edit(Expense expense, double amount, String category, String description) {
+        Expense before = copy(expense);
+        expense.setAmount(amount);
+        expense.setCategory(category);
+        expense.setDescription(description);
+        repository.update(expense);
+        Expense after = copy(expense);
+        record(new Step("Edit", () -> repository.update(copy(before)), () -> repository.update(copy(after))));
+    }
+
+    public void clearAll() {
+        // Each redo clears again and so hands back a new restore action
+        Runnable[] restore = {repository.clearRestorable()};
+        record(new Step("Clear All", () -> restore[0].run(), () -> restore[0] = repository.clearRestorable()));
+    }
+
+    public boolean canUndo() {
+        return !undoSteps.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !redoSteps.isEmpty();
+    }
+
+    /** Name of the change {@link #undo} would reverse, or null if there is none. */
+    public String undoName() {
+        return undoSteps.isEmpty() ? null : undoSteps.peek().name;
+    }
+
+    public String redoName() {
+        return redoSteps.isEmpty() ? null : redoSteps.peek().name;
+    }
+
+    public void undo() {
+        if (undoSteps.isEmpty()) return;
+        Step step = undoSteps.pop();
+        step.undo.run();
+        redoSteps.push(step);
+    }
+
+    public void redo() {
+        if (redoSteps.isEmpty()) return;
+        Step step = redoSteps.pop();
+        step.redo.run();
+        undoSteps.push(step);
+    }
+
+    /** Drops every step, after a change the history can't reverse. */
+    public void forget() {
+        undoSteps.clear();
+        redoSteps.clear();
+    }
+
+    private void record(Step step) {
+        undoSteps.push(step);
+        redoSteps.clear();
+    }
+
+    private static Expense copy(Expense expense) {
+        return new Expense(expense.getAmount(), expense.getCategory(), expense.getDescription(), expense.getTimestamp());
+    }
+}